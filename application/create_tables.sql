@@ -12,3 +12,24 @@ create table quote_subject (
     primary key (quote_id, subject),
     foreign key (quote_id) references quote(id)
 );
+
+create index quote_attributedTo on quote (attributedTo);
+
+create index quote_subject_subject on quote_subject (subject);
+
+create fulltext index quote_text_fulltext on quote (text);
+
+create table quote_change (
+    seq bigint not null,
+    change_type varchar(10) not null,
+    quote_id int not null,
+    primary key (seq)
+);
+
+create table quote_change_sequence (
+    id int not null,
+    last_seq bigint not null,
+    primary key (id)
+);
+
+insert into quote_change_sequence (id, last_seq) values (1, 0);
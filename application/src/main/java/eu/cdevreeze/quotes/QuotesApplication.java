@@ -16,6 +16,7 @@
 
 package eu.cdevreeze.quotes;
 
+import eu.cdevreeze.quotes.metrics.ScanMetrics;
 import eu.cdevreeze.quotes.repository.ScanRepositoryLayer;
 import eu.cdevreeze.quotes.service.ScanServiceLayer;
 import eu.cdevreeze.quotes.springeventlistener.ScanSpringEventListeners;
@@ -27,8 +28,9 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  * Quotes application main program.
  * <p>
  * The web application can be run with:
- * <pre>java -jar application/target/quotes-0.0.1-SNAPSHOT.jar</pre>
- * This only works after the build has performed a "mvnw spring-boot:repackage" command.
+ * <pre>java -jar application/target/quotes-0.0.1-SNAPSHOT-exec.jar</pre>
+ * This only works after the build has performed a "mvnw spring-boot:repackage" command. Note the "exec"
+ * classifier of the executable jar. The plain jar is kept as well, for use as a dependency.
  * <p>
  * The application wiring has been done in a somewhat disciplined way. First note that the Spring Boot
  * SpringBootApplication annotation is itself annotated with the Spring ComponentScan annotation.
@@ -78,7 +80,8 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
         ScanWebLayer.class,
         ScanServiceLayer.class,
         ScanRepositoryLayer.class,
-        ScanSpringEventListeners.class
+        ScanSpringEventListeners.class,
+        ScanMetrics.class
 })
 public class QuotesApplication {
 
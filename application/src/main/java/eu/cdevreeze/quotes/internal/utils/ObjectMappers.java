@@ -17,21 +17,48 @@
 package eu.cdevreeze.quotes.internal.utils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import eu.cdevreeze.quotes.model.Quote;
 
 /**
  * Utility class to get a Jackson ObjectMapper that is aware of Java 8 and Guava collections.
+ * <p>
+ * Creating an ObjectMapper is expensive, and so is the first (de)serialization of a type by that ObjectMapper.
+ * Hence, for frequent deserialization (such as JSON in database rows) use the shared ObjectReaders offered by
+ * this class. ObjectReaders are immutable and thread-safe, and share the caches of the ObjectMapper they have
+ * been created from.
  *
  * @author Chris de Vreeze
  */
 public class ObjectMappers {
 
+    // Never exposed, so it cannot be reconfigured after creation of the ObjectReaders below
+    private static final ObjectMapper sharedObjectMapper = getObjectMapper(false);
+
+    private static final ObjectReader stringArrayReader = sharedObjectMapper.readerFor(String[].class);
+    private static final ObjectReader quoteReader = sharedObjectMapper.readerFor(Quote.class);
+
     private ObjectMappers() {
     }
 
+    /**
+     * Returns the shared ObjectReader for JSON arrays of strings, such as quote subjects.
+     */
+    public static ObjectReader getStringArrayReader() {
+        return stringArrayReader;
+    }
+
+    /**
+     * Returns the shared ObjectReader for Quote JSON objects.
+     */
+    public static ObjectReader getQuoteReader() {
+        return quoteReader;
+    }
+
     public static ObjectMapper getObjectMapper(boolean indentOutput) {
         var resultWithoutPrettifying =
                 JsonMapper.builder()
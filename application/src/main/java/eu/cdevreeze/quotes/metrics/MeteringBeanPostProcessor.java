@@ -0,0 +1,80 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.metrics;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.repository.QuoteChangeRepository;
+import eu.cdevreeze.quotes.repository.QuoteRepository;
+import eu.cdevreeze.quotes.service.QuoteService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.framework.autoproxy.AbstractBeanFactoryAwareAdvisingPostProcessor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+
+/**
+ * BeanPostProcessor that instruments all QuoteService, QuoteRepository and QuoteChangeRepository beans with
+ * Micrometer metrics (see {@link MeteringInterceptor}), tagged by implementation class. So, for example, the
+ * JdbcQuoteRepository and the JSON-based repositories can be compared in production, and the CachingQuoteRepository
+ * can be compared with the repository it decorates.
+ * <p>
+ * Beans that are already proxies (such as the transactional QuoteService) get the metering advice as their
+ * outermost advice, so that the timings of service methods include the transaction commit. Other beans are
+ * proxied by subclassing, like Spring Boot does by default, so that they can still be injected by class.
+ * <p>
+ * The MeterRegistry is looked up lazily, because this BeanPostProcessor is created before the MeterRegistry
+ * (which should itself be post-processed by Spring Boot's MeterRegistry customizers).
+ * <p>
+ * This BeanPostProcessor is only created if property "implementation.quoteMetrics" is "true" (the default).
+ *
+ * @author Chris de Vreeze
+ */
+@Component
+@ConditionalOnProperty(name = "implementation.quoteMetrics", havingValue = "true", matchIfMissing = true)
+public class MeteringBeanPostProcessor extends AbstractBeanFactoryAwareAdvisingPostProcessor {
+
+    private static final ImmutableList<Class<?>> METERED_INTERFACES =
+            ImmutableList.of(QuoteService.class, QuoteRepository.class, QuoteChangeRepository.class);
+
+    public MeteringBeanPostProcessor(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.advisor = new DefaultPointcutAdvisor(new MeteredMethodPointcut(), new MeteringInterceptor(meterRegistryProvider));
+        setBeforeExistingAdvisors(true);
+        setProxyTargetClass(true);
+    }
+
+    /**
+     * Matches the methods declared in the metered interfaces, in classes implementing them.
+     */
+    private static final class MeteredMethodPointcut extends StaticMethodMatcherPointcut {
+
+        MeteredMethodPointcut() {
+            setClassFilter(clazz -> METERED_INTERFACES.stream().anyMatch(itf -> itf.isAssignableFrom(clazz)));
+        }
+
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            return METERED_INTERFACES.stream()
+                    .filter(itf -> itf.isAssignableFrom(targetClass))
+                    .anyMatch(itf -> ReflectionUtils.findMethod(itf, method.getName(), method.getParameterTypes()) != null);
+        }
+    }
+}
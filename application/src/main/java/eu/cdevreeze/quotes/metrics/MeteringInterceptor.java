@@ -0,0 +1,166 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.metrics;
+
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.service.QuoteService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Method interceptor recording Micrometer metrics for each call of a QuoteService or (change) repository method.
+ * The metric names start with "quotes.service" or "quotes.repository", and all metrics are tagged with the
+ * implementation class ("class") and method name ("method"):
+ * <ul>
+ * <li>Timer "...calls", with a percentile histogram, timing all calls, whether successful or not</li>
+ * <li>Distribution summary "...results", with a percentile histogram, containing the number of quotes (or changes)
+ * returned by successful calls: the size of a returned collection, 0 or 1 for an Optional or single quote, and the
+ * number of quotes passed to the Consumer argument (of method "forEachQuote"). Other methods (such as
+ * "deleteQuote" and "getDataVersion") have no such distribution summary.</li>
+ * <li>Counter "...errors", also tagged with the exception class ("exception"), counting failed calls</li>
+ * </ul>
+ * The meters of each class and method are registered (or looked up) only once.
+ *
+ * @author Chris de Vreeze
+ */
+final class MeteringInterceptor implements MethodInterceptor {
+
+    private static final double MAX_EXPECTED_RESULT_SIZE = 1_000_000;
+
+    private final ObjectProvider<MeterRegistry> meterRegistryProvider;
+    private final ConcurrentMap<MeterKey, Meters> meters = new ConcurrentHashMap<>();
+
+    MeteringInterceptor(ObjectProvider<MeterRegistry> meterRegistryProvider) {
+        this.meterRegistryProvider = meterRegistryProvider;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        var targetClass = AopUtils.getTargetClass(Objects.requireNonNull(invocation.getThis()));
+        var methodMeters = meters.computeIfAbsent(
+                new MeterKey(targetClass, invocation.getMethod()),
+                key -> createMeters(meterRegistryProvider.getObject(), key));
+
+        var consumedCount = countConsumedValues(invocation.getArguments());
+        long startNanos = System.nanoTime();
+        try {
+            Object result = invocation.proceed();
+            methodMeters.resultSize().ifPresent(summary -> resultSize(result, consumedCount).ifPresent(summary::record));
+            return result;
+        } catch (Throwable e) {
+            Counter.builder(methodMeters.metricNamePrefix() + ".errors")
+                    .description("Number of failed calls")
+                    .tags("class", methodMeters.className(), "method", methodMeters.methodName())
+                    .tag("exception", e.getClass().getSimpleName())
+                    .register(methodMeters.meterRegistry())
+                    .increment();
+            throw e;
+        } finally {
+            methodMeters.timer().record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Replaces a Consumer argument (if any) by one counting the values passed to it, and returns the counter.
+     * The arguments array of the invocation may be modified in place.
+     */
+    @SuppressWarnings("unchecked")
+    private static Optional<AtomicLong> countConsumedValues(Object[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof Consumer<?> consumer) {
+                var count = new AtomicLong();
+                var action = (Consumer<Object>) consumer;
+                args[i] = (Consumer<Object>) value -> {
+                    count.incrementAndGet();
+                    action.accept(value);
+                };
+                return Optional.of(count);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static OptionalLong resultSize(Object result, Optional<AtomicLong> consumedCount) {
+        return switch (result) {
+            case Collection<?> collection -> OptionalLong.of(collection.size());
+            case Optional<?> optional -> OptionalLong.of(optional.isPresent() ? 1 : 0);
+            case Quote ignored -> OptionalLong.of(1);
+            case null, default -> consumedCount.map(count -> OptionalLong.of(count.get())).orElse(OptionalLong.empty());
+        };
+    }
+
+    private static Meters createMeters(MeterRegistry meterRegistry, MeterKey key) {
+        var metricNamePrefix =
+                QuoteService.class.isAssignableFrom(key.targetClass()) ? "quotes.service" : "quotes.repository";
+        var className = key.targetClass().getSimpleName();
+        var methodName = key.method().getName();
+
+        var timer = Timer.builder(metricNamePrefix + ".calls")
+                .description("Duration of calls")
+                .tags("class", className, "method", methodName)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        var resultSize = Optional.of(key.method())
+                .filter(MeteringInterceptor::hasResultSize)
+                .map(method -> DistributionSummary.builder(metricNamePrefix + ".results")
+                        .description("Number of quotes or changes returned by successful calls")
+                        .baseUnit("quotes")
+                        .tags("class", className, "method", methodName)
+                        .publishPercentileHistogram()
+                        .maximumExpectedValue(MAX_EXPECTED_RESULT_SIZE)
+                        .register(meterRegistry));
+        return new Meters(meterRegistry, metricNamePrefix, className, methodName, timer, resultSize);
+    }
+
+    private static boolean hasResultSize(Method method) {
+        return Collection.class.isAssignableFrom(method.getReturnType()) ||
+                Optional.class.isAssignableFrom(method.getReturnType()) ||
+                Quote.class.isAssignableFrom(method.getReturnType()) ||
+                Arrays.stream(method.getParameterTypes()).anyMatch(Consumer.class::isAssignableFrom);
+    }
+
+    private record MeterKey(Class<?> targetClass, Method method) {
+    }
+
+    private record Meters(
+            MeterRegistry meterRegistry,
+            String metricNamePrefix,
+            String className,
+            String methodName,
+            Timer timer,
+            Optional<DistributionSummary> resultSize
+    ) {
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.quotes.model;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Entry of the quote change log: a quote was added or deleted. The sequence number orders the changes in commit
+ * order, so a consumer that has seen all changes up to some sequence number only needs the changes after it.
+ * <p>
+ * An "added" change contains the quote, unless the quote has been deleted since (which is a later change itself).
+ * It is deeply immutable and thread-safe.
+ *
+ * @author Chris de Vreeze
+ */
+public record QuoteChange(
+        long seq,
+        Type type,
+        long quoteId,
+        Optional<Quote> quote
+) {
+    public enum Type {ADDED, DELETED}
+
+    public QuoteChange {
+        Objects.requireNonNull(type);
+        Objects.requireNonNull(quote);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.quotes.repository;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.model.QuoteChange;
+
+import java.util.List;
+
+/**
+ * Quote change log database repository interface. The change log is append-only, and is written in the same
+ * transaction as the changes themselves.
+ *
+ * @author Chris de Vreeze
+ */
+public interface QuoteChangeRepository {
+
+    /**
+     * Appends a change of the given type for each of the given quote IDs, in that order. Sequence numbers must be
+     * assigned in commit order, so a reader never sees a change with a higher sequence number before all changes
+     * with lower sequence numbers have been committed. This may serialize concurrent writing transactions.
+     */
+    void addChanges(QuoteChange.Type changeType, List<Long> quoteIds);
+
+    /**
+     * Returns at most {@code limit} changes with a sequence number greater than {@code afterSeq}, ordered by
+     * sequence number. The sequence number of the last returned change is the cursor for the next call.
+     */
+    ImmutableList<QuoteChange> findChangesAfter(long afterSeq, int limit);
+}
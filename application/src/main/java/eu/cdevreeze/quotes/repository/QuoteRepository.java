@@ -20,6 +20,10 @@ import com.google.common.collect.ImmutableList;
 import eu.cdevreeze.quotes.model.Quote;
 import eu.cdevreeze.quotes.model.QuoteData;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
 /**
  * Quotes database repository interface.
  *
@@ -29,11 +33,49 @@ public interface QuoteRepository {
 
     ImmutableList<Quote> findAllQuotes();
 
+    /**
+     * Passes all quotes, ordered by ID, one at a time to the given action, without first collecting them all
+     * in memory (if the implementation does not already hold them in memory). This supports exporting all
+     * quotes with a memory footprint that does not depend on the number of quotes.
+     */
+    void forEachQuote(Consumer<? super Quote> action);
+
+    /**
+     * Returns at most {@code limit} quotes with an ID greater than {@code afterId}, ordered by ID.
+     * This supports keyset pagination: the ID of the last quote of a page is the cursor for the next page.
+     */
+    ImmutableList<Quote> findQuotesAfter(long afterId, int limit);
+
     ImmutableList<Quote> findBySubject(String subject);
 
     ImmutableList<Quote> findByAttributedTo(String attributedTo);
 
+    /**
+     * Returns at most {@code limit} quotes whose text matches the given query, using a full-text index,
+     * most relevant first.
+     */
+    ImmutableList<Quote> searchQuotes(String query, int limit);
+
+    /**
+     * Returns a random quote, if any, without retrieving all quotes.
+     */
+    Optional<Quote> findRandomQuote();
+
+    /**
+     * Returns a random quote having the given subject, if any, without retrieving all quotes with that subject.
+     */
+    Optional<Quote> findRandomQuoteBySubject(String subject);
+
     Quote addQuote(QuoteData quote);
 
-    void deleteQuote(long quoteId);
+    /**
+     * Adds the given quotes in bulk, using batched statements, and returns them with their generated IDs,
+     * in the same order as the input.
+     */
+    ImmutableList<Quote> addQuotes(List<QuoteData> quotes);
+
+    /**
+     * Deletes the quote with the given ID, returning false if there is no such quote.
+     */
+    boolean deleteQuote(long quoteId);
 }
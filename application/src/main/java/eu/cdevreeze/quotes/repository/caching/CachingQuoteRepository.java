@@ -0,0 +1,234 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.repository.caching;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.model.QuoteData;
+import eu.cdevreeze.quotes.repository.QuoteRepository;
+import eu.cdevreeze.quotes.repository.index.QuoteIndex;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Read-through caching QuoteRepository decorator. It holds an immutable QuoteIndex of all quotes, loaded
+ * from the decorated repository when needed. Writes are delegated to the decorated repository, and are
+ * applied incrementally to the cached index once the surrounding transaction (if any) has committed.
+ * <p>
+ * Updating the index costs O(n) for n quotes, however small the write (see {@link QuoteIndex}). Therefore,
+ * committed writes are only collected, at a cost proportional to the size of the write, and the next read applies
+ * all of them to the index in one update. So a series of writes without reads in between (such as a bulk load)
+ * costs one index update, instead of one per write.
+ * <p>
+ * This repository is only created if property "implementation.cachingQuoteRepository" is "true". It is
+ * then the Primary QuoteRepository, so it is injected into the service layer. The decorated repository
+ * is the other QuoteRepository bean (typically selected by property "implementation.jdbcQuoteRepository"),
+ * because Spring only considers a bean as candidate for its own dependencies if there is no other candidate.
+ * <p>
+ * The cache only sees writes through this repository. Changes made directly in the database by other
+ * means (or by other application instances) are not seen until the cache is reloaded.
+ *
+ * @author Chris de Vreeze
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(
+        name = "implementation.cachingQuoteRepository",
+        havingValue = "true"
+)
+public class CachingQuoteRepository implements QuoteRepository {
+
+    private final QuoteRepository quoteRepository;
+
+    // Incremented after each committed write; a snapshot is only valid for the generation it belongs to
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+    // Committed writes (the added quote, or empty for a deletion, per quote ID) not yet applied to the snapshot,
+    // guarded by "this". Together with the snapshot they are up-to-date for generation pendingGeneration.
+    private final Map<Long, Optional<Quote>> pendingChanges = new LinkedHashMap<>();
+    private long pendingGeneration;
+
+    public CachingQuoteRepository(QuoteRepository quoteRepository) {
+        Preconditions.checkArgument(!(quoteRepository instanceof CachingQuoteRepository));
+        this.quoteRepository = quoteRepository;
+    }
+
+    @Override
+    public ImmutableList<Quote> findAllQuotes() {
+        return getQuoteIndex().findAllQuotes();
+    }
+
+    @Override
+    public void forEachQuote(Consumer<? super Quote> action) {
+        getQuoteIndex().findAllQuotes().forEach(action);
+    }
+
+    @Override
+    public ImmutableList<Quote> findQuotesAfter(long afterId, int limit) {
+        return getQuoteIndex().findQuotesAfter(afterId, limit);
+    }
+
+    @Override
+    public ImmutableList<Quote> findBySubject(String subject) {
+        return getQuoteIndex().findBySubject(subject);
+    }
+
+    @Override
+    public ImmutableList<Quote> findByAttributedTo(String attributedTo) {
+        return getQuoteIndex().findByAttributedTo(attributedTo);
+    }
+
+    @Override
+    public ImmutableList<Quote> searchQuotes(String query, int limit) {
+        return getQuoteIndex().searchQuotes(query, limit);
+    }
+
+    @Override
+    public Optional<Quote> findRandomQuote() {
+        return getQuoteIndex().findRandomQuote();
+    }
+
+    @Override
+    public Optional<Quote> findRandomQuoteBySubject(String subject) {
+        return getQuoteIndex().findRandomQuoteBySubject(subject);
+    }
+
+    @Override
+    public Quote addQuote(QuoteData quote) {
+        var result = quoteRepository.addQuote(quote);
+        updateAfterCommit(ImmutableMap.of(result.id(), Optional.of(result)));
+        return result;
+    }
+
+    @Override
+    public ImmutableList<Quote> addQuotes(List<QuoteData> quotes) {
+        var result = quoteRepository.addQuotes(quotes);
+        updateAfterCommit(result.stream().collect(ImmutableMap.toImmutableMap(Quote::id, Optional::of)));
+        return result;
+    }
+
+    @Override
+    public boolean deleteQuote(long quoteId) {
+        var deleted = quoteRepository.deleteQuote(quoteId);
+        if (deleted) {
+            updateAfterCommit(ImmutableMap.of(quoteId, Optional.empty()));
+        }
+        return deleted;
+    }
+
+    /**
+     * Returns the cached quote index, applying the pending writes to it, or loading it from the decorated
+     * repository if needed.
+     */
+    private QuoteIndex getQuoteIndex() {
+        var currentGeneration = generation.get();
+        var currentSnapshot = snapshot.get();
+
+        if (currentSnapshot != null && currentSnapshot.generation() == currentGeneration) {
+            return currentSnapshot.quoteIndex();
+        }
+
+        var updatedQuoteIndex = applyPendingChanges();
+        if (updatedQuoteIndex.isPresent()) {
+            return updatedQuoteIndex.get();
+        }
+
+        var quoteIndex = QuoteIndex.of(quoteRepository.findAllQuotes());
+
+        // If a write has been committed during loading, the loaded quotes may be outdated, so do not cache them
+        synchronized (this) {
+            if (generation.get() == currentGeneration) {
+                snapshot.set(new Snapshot(currentGeneration, quoteIndex));
+                pendingChanges.clear();
+                pendingGeneration = currentGeneration;
+            }
+        }
+        return quoteIndex;
+    }
+
+    /**
+     * Applies the pending writes to the cached index in one update, and returns the result, unless there is
+     * no cached index to apply them to.
+     */
+    private synchronized Optional<QuoteIndex> applyPendingChanges() {
+        var currentSnapshot = snapshot.get();
+        if (currentSnapshot == null || pendingGeneration != generation.get()) {
+            return Optional.empty();
+        }
+        if (currentSnapshot.generation() == pendingGeneration) {
+            return Optional.of(currentSnapshot.quoteIndex());
+        }
+
+        var addedQuotes = pendingChanges.values().stream()
+                .flatMap(Optional::stream)
+                .collect(ImmutableList.toImmutableList());
+        var quoteIndex = currentSnapshot.quoteIndex().withChanges(addedQuotes, pendingChanges.keySet());
+        snapshot.set(new Snapshot(pendingGeneration, quoteIndex));
+        pendingChanges.clear();
+        return Optional.of(quoteIndex);
+    }
+
+    private void updateAfterCommit(ImmutableMap<Long, Optional<Quote>> changes) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    update(changes);
+                }
+            });
+        } else {
+            update(changes);
+        }
+    }
+
+    /**
+     * Adds the committed write to the pending writes, if they are up-to-date, and otherwise drops the cached index.
+     * Applying the writes is idempotent, so they can safely be applied to an index already containing them.
+     */
+    private synchronized void update(ImmutableMap<Long, Optional<Quote>> changes) {
+        var previousGeneration = generation.getAndIncrement();
+        if (snapshot.get() != null && pendingGeneration == previousGeneration) {
+            pendingChanges.putAll(changes);
+            pendingGeneration = previousGeneration + 1;
+        } else {
+            snapshot.set(null);
+            pendingChanges.clear();
+        }
+    }
+
+    private record Snapshot(long generation, QuoteIndex quoteIndex) {
+
+        private Snapshot {
+            Objects.requireNonNull(quoteIndex);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.repository.index;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.*;
+import eu.cdevreeze.quotes.model.Quote;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable inverted index of quote texts, from (lower-case) terms to the quotes containing them, along with
+ * their term frequencies. Like {@link QuoteIndex}, which holds it, updates are copy-on-write, only rebuilding
+ * the postings of the affected terms. They still cost O(n), because the term map and the document lengths are
+ * copied as a whole, as are the postings of frequent terms (such as "the"), which contain most quotes.
+ * <p>
+ * Search results are ranked with Okapi BM25, so rare terms weigh more than common ones, and short quotes
+ * containing a term weigh more than long ones.
+ *
+ * @author Chris de Vreeze
+ */
+final class FullTextIndex {
+
+    private static final FullTextIndex EMPTY = new FullTextIndex(ImmutableMap.of(), ImmutableMap.of(), 0L);
+
+    private static final Pattern NON_WORD_CHARACTERS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final ImmutableMap<String, ImmutableMap<Long, Integer>> termFrequenciesByTerm;
+    private final ImmutableMap<Long, Integer> documentLengths;
+    private final long totalDocumentLength;
+
+    private FullTextIndex(
+            ImmutableMap<String, ImmutableMap<Long, Integer>> termFrequenciesByTerm,
+            ImmutableMap<Long, Integer> documentLengths,
+            long totalDocumentLength
+    ) {
+        this.termFrequenciesByTerm = termFrequenciesByTerm;
+        this.documentLengths = documentLengths;
+        this.totalDocumentLength = totalDocumentLength;
+    }
+
+    static FullTextIndex empty() {
+        return EMPTY;
+    }
+
+    static ImmutableList<String> tokenize(String text) {
+        return NON_WORD_CHARACTERS.splitAsStream(text.toLowerCase(Locale.ROOT))
+                .filter(term -> !term.isEmpty())
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    /**
+     * Returns the IDs of at most {@code limit} quotes containing any of the terms of the query, most
+     * relevant first (and for equal relevance, ordered by ID).
+     */
+    ImmutableList<Long> search(String query, int limit) {
+        Preconditions.checkArgument(limit > 0);
+        if (documentLengths.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        int documentCount = documentLengths.size();
+        double averageDocumentLength = (double) totalDocumentLength / documentCount;
+        Map<Long, Double> scores = new HashMap<>();
+
+        for (String term : ImmutableSet.copyOf(tokenize(query))) {
+            var termFrequencies = termFrequenciesByTerm.getOrDefault(term, ImmutableMap.of());
+            int documentFrequency = termFrequencies.size();
+            double idf = Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+
+            termFrequencies.forEach((quoteId, termFrequency) -> {
+                double lengthNorm = 1 - B + B * documentLengths.get(quoteId) / averageDocumentLength;
+                double score = idf * termFrequency * (K1 + 1) / (termFrequency + K1 * lengthNorm);
+                scores.merge(quoteId, score, Double::sum);
+            });
+        }
+
+        // Top-k selection, without sorting all matching quotes
+        return scores.entrySet().stream()
+                .collect(Comparators.least(
+                        limit,
+                        Map.Entry.<Long, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey())))
+                .stream()
+                .map(Map.Entry::getKey)
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    FullTextIndex update(Collection<Quote> obsoleteQuotes, Collection<Quote> addedQuotes) {
+        Map<String, Map<Long, Integer>> removals = new HashMap<>();
+        Map<String, Map<Long, Integer>> additions = new HashMap<>();
+        Map<Long, Integer> newDocumentLengths = new HashMap<>(documentLengths);
+        long newTotalDocumentLength = totalDocumentLength;
+
+        for (Quote quote : obsoleteQuotes) {
+            var terms = tokenize(quote.text());
+            terms.forEach(term -> removals.computeIfAbsent(term, t -> new HashMap<>()).merge(quote.id(), 1, Integer::sum));
+            newDocumentLengths.remove(quote.id());
+            newTotalDocumentLength -= terms.size();
+        }
+        for (Quote quote : addedQuotes) {
+            var terms = tokenize(quote.text());
+            terms.forEach(term -> additions.computeIfAbsent(term, t -> new HashMap<>()).merge(quote.id(), 1, Integer::sum));
+            newDocumentLengths.put(quote.id(), terms.size());
+            newTotalDocumentLength += terms.size();
+        }
+
+        // Only the postings of affected terms are rebuilt; the others are shared with the old index
+        Map<String, ImmutableMap<Long, Integer>> newTermFrequenciesByTerm = new HashMap<>(termFrequenciesByTerm);
+        for (String term : Sets.union(removals.keySet(), additions.keySet())) {
+            Map<Long, Integer> termFrequencies = new HashMap<>(termFrequenciesByTerm.getOrDefault(term, ImmutableMap.of()));
+            termFrequencies.keySet().removeAll(removals.getOrDefault(term, Map.of()).keySet());
+            termFrequencies.putAll(additions.getOrDefault(term, Map.of()));
+
+            if (termFrequencies.isEmpty()) {
+                newTermFrequenciesByTerm.remove(term);
+            } else {
+                newTermFrequenciesByTerm.put(term, ImmutableMap.copyOf(termFrequencies));
+            }
+        }
+
+        return new FullTextIndex(
+                ImmutableMap.copyOf(newTermFrequenciesByTerm),
+                ImmutableMap.copyOf(newDocumentLengths),
+                newTotalDocumentLength
+        );
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.repository.index;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.*;
+import eu.cdevreeze.quotes.model.Quote;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * Immutable in-memory index of quotes, with "secondary indexes" from subject and attributedTo to quote IDs,
+ * and a full-text index of the quote texts.
+ * It is deeply immutable and thread-safe. Updates are copy-on-write: they return a new index, leaving the old one
+ * unchanged.
+ * <p>
+ * Lookups by ID, subject or attributedTo cost O(log n) plus the size of the result, instead of a scan over
+ * all quotes. All returned quote collections are ordered by quote ID.
+ * <p>
+ * Updates, on the other hand, cost O(n), however few quotes they add or remove: the Guava immutable maps are
+ * copied as a whole (the quotes by ID, the secondary indexes and the full-text index), and only the entries of
+ * affected keys are rebuilt. The quotes themselves are shared, not copied. For 1M quotes, adding one quote takes
+ * hundreds of milliseconds (see QuoteIndexBenchmark). So updates should be batched: one update with many quotes
+ * (see {@link #withChanges(Collection, Set)}) costs far less than adding or removing them one at a time.
+ *
+ * @author Chris de Vreeze
+ */
+public final class QuoteIndex {
+
+    private static final QuoteIndex EMPTY =
+            new QuoteIndex(ImmutableSortedMap.of(), ImmutableMap.of(), ImmutableMap.of(), FullTextIndex.empty());
+
+    private final ImmutableSortedMap<Long, Quote> quotesById;
+    private final ImmutableMap<String, ImmutableSortedSet<Long>> quoteIdsBySubject;
+    private final ImmutableMap<String, ImmutableSortedSet<Long>> quoteIdsByAttributedTo;
+    private final FullTextIndex fullTextIndex;
+
+    private QuoteIndex(
+            ImmutableSortedMap<Long, Quote> quotesById,
+            ImmutableMap<String, ImmutableSortedSet<Long>> quoteIdsBySubject,
+            ImmutableMap<String, ImmutableSortedSet<Long>> quoteIdsByAttributedTo,
+            FullTextIndex fullTextIndex
+    ) {
+        this.quotesById = quotesById;
+        this.quoteIdsBySubject = quoteIdsBySubject;
+        this.quoteIdsByAttributedTo = quoteIdsByAttributedTo;
+        this.fullTextIndex = fullTextIndex;
+    }
+
+    public static QuoteIndex empty() {
+        return EMPTY;
+    }
+
+    public static QuoteIndex of(Collection<Quote> quotes) {
+        return EMPTY.withQuotes(quotes);
+    }
+
+    public int size() {
+        return quotesById.size();
+    }
+
+    /**
+     * Returns all quotes, ordered by ID. This is a view, so it takes constant time.
+     */
+    public ImmutableList<Quote> findAllQuotes() {
+        return quotesById.values().asList();
+    }
+
+    public Optional<Quote> findById(long quoteId) {
+        return Optional.ofNullable(quotesById.get(quoteId));
+    }
+
+    public ImmutableList<Quote> findQuotesAfter(long afterId, int limit) {
+        Preconditions.checkArgument(limit > 0);
+        return quotesById.tailMap(afterId, false)
+                .values()
+                .stream()
+                .limit(limit)
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    public ImmutableList<Quote> findBySubject(String subject) {
+        return getQuotes(quoteIdsBySubject.getOrDefault(subject, ImmutableSortedSet.of()));
+    }
+
+    public ImmutableList<Quote> findByAttributedTo(String attributedTo) {
+        return getQuotes(quoteIdsByAttributedTo.getOrDefault(attributedTo, ImmutableSortedSet.of()));
+    }
+
+    /**
+     * Returns at most {@code limit} quotes whose text contains any of the words in the query (case-insensitive),
+     * most relevant first.
+     */
+    public ImmutableList<Quote> searchQuotes(String query, int limit) {
+        return fullTextIndex.search(query, limit).stream()
+                .map(quotesById::get)
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    /**
+     * Returns a random quote, if any, in constant time (picking a random position in the ID-ordered quotes).
+     */
+    public Optional<Quote> findRandomQuote() {
+        return pickRandomly(findAllQuotes());
+    }
+
+    public Optional<Quote> findRandomQuoteBySubject(String subject) {
+        return pickRandomly(quoteIdsBySubject.getOrDefault(subject, ImmutableSortedSet.of()).asList())
+                .map(quotesById::get);
+    }
+
+    public QuoteIndex withQuote(Quote quote) {
+        return update(ImmutableList.of(quote), ImmutableSet.of());
+    }
+
+    /**
+     * Returns a new index with the given quotes added. Quotes having the same ID as quotes already in
+     * the index replace those quotes.
+     */
+    public QuoteIndex withQuotes(Collection<Quote> quotes) {
+        return update(quotes, ImmutableSet.of());
+    }
+
+    public QuoteIndex withoutQuote(long quoteId) {
+        return update(ImmutableList.of(), ImmutableSet.of(quoteId));
+    }
+
+    /**
+     * Returns a new index with the quotes having the given IDs removed, after which the given quotes are added.
+     * This is one update, so it costs far less than adding or removing the quotes one at a time.
+     */
+    public QuoteIndex withChanges(Collection<Quote> addedQuotes, Set<Long> removedQuoteIds) {
+        return update(addedQuotes, removedQuoteIds);
+    }
+
+    private static <T> Optional<T> pickRandomly(ImmutableList<T> elements) {
+        if (elements.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(elements.get(ThreadLocalRandom.current().nextInt(elements.size())));
+    }
+
+    private ImmutableList<Quote> getQuotes(ImmutableSortedSet<Long> quoteIds) {
+        return quoteIds.stream().map(quotesById::get).collect(ImmutableList.toImmutableList());
+    }
+
+    private QuoteIndex update(Collection<Quote> addedQuotes, Set<Long> removedQuoteIds) {
+        if (addedQuotes.isEmpty() && removedQuoteIds.stream().noneMatch(quotesById::containsKey)) {
+            return this;
+        }
+
+        Map<Long, Quote> newQuotesById = new TreeMap<>(quotesById);
+        List<Quote> obsoleteQuotes = new ArrayList<>();
+
+        for (long quoteId : removedQuoteIds) {
+            Optional.ofNullable(newQuotesById.remove(quoteId)).ifPresent(obsoleteQuotes::add);
+        }
+        for (Quote quote : addedQuotes) {
+            Optional.ofNullable(newQuotesById.put(quote.id(), quote)).ifPresent(obsoleteQuotes::add);
+        }
+
+        return new QuoteIndex(
+                ImmutableSortedMap.copyOf(newQuotesById),
+                updateSecondaryIndex(quoteIdsBySubject, obsoleteQuotes, addedQuotes, Quote::subjects),
+                updateSecondaryIndex(quoteIdsByAttributedTo, obsoleteQuotes, addedQuotes, qt -> List.of(qt.attributedTo())),
+                fullTextIndex.update(obsoleteQuotes, addedQuotes)
+        );
+    }
+
+    private static ImmutableMap<String, ImmutableSortedSet<Long>> updateSecondaryIndex(
+            ImmutableMap<String, ImmutableSortedSet<Long>> secondaryIndex,
+            Collection<Quote> obsoleteQuotes,
+            Collection<Quote> addedQuotes,
+            Function<Quote, Collection<String>> getKeys
+    ) {
+        SetMultimap<String, Long> removals = HashMultimap.create();
+        obsoleteQuotes.forEach(qt -> getKeys.apply(qt).forEach(key -> removals.put(key, qt.id())));
+        SetMultimap<String, Long> additions = HashMultimap.create();
+        addedQuotes.forEach(qt -> getKeys.apply(qt).forEach(key -> additions.put(key, qt.id())));
+
+        // Only the index entries for affected keys are rebuilt; the others are shared with the old index
+        Map<String, ImmutableSortedSet<Long>> result = new HashMap<>(secondaryIndex);
+        for (String key : Sets.union(removals.keySet(), additions.keySet())) {
+            SortedSet<Long> quoteIds = new TreeSet<>(secondaryIndex.getOrDefault(key, ImmutableSortedSet.of()));
+            quoteIds.removeAll(removals.get(key));
+            quoteIds.addAll(additions.get(key));
+
+            if (quoteIds.isEmpty()) {
+                result.remove(key);
+            } else {
+                result.put(key, ImmutableSortedSet.copyOfSorted(quoteIds));
+            }
+        }
+        return ImmutableMap.copyOf(result);
+    }
+}
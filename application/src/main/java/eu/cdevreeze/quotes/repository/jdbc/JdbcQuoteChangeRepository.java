@@ -0,0 +1,145 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.repository.jdbc;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.model.QuoteChange;
+import eu.cdevreeze.quotes.repository.QuoteChangeRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * (Spring) JDBC-based QuoteChangeRepository implementation, using tables "quote_change" and "quote_change_sequence".
+ * <p>
+ * The sequence numbers are not generated by the database (auto-increment), because those are handed out in
+ * insertion order rather than commit order. A reader could then see change N+1 committed before change N, and
+ * skip change N forever. Instead, the single row of table "quote_change_sequence" is incremented, which locks
+ * it until commit, so writing transactions take their sequence numbers one after the other. To keep that lock
+ * short, the QuoteService appends the changes after having made them.
+ * <p>
+ * The quote of an "added" change is not copied into the change log, but joined in when reading the changes.
+ *
+ * @author Chris de Vreeze
+ */
+@Repository
+public class JdbcQuoteChangeRepository implements QuoteChangeRepository {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final JdbcClient jdbcClient;
+
+    public JdbcQuoteChangeRepository(DataSource dataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.jdbcClient = JdbcClient.create(jdbcTemplate);
+    }
+
+    @Override
+    public void addChanges(QuoteChange.Type changeType, List<Long> quoteIds) {
+        if (quoteIds.isEmpty()) {
+            return;
+        }
+        var lastSeq = reserveSequenceNumbers(quoteIds.size());
+        var firstSeq = lastSeq - quoteIds.size() + 1;
+
+        String sql = """
+                insert into quote_change (seq, change_type, quote_id)
+                values (:seq, :change_type, :quote_id)""";
+        var batchArgs = IntStream.range(0, quoteIds.size())
+                .mapToObj(i -> new MapSqlParameterSource()
+                        .addValue("seq", firstSeq + i)
+                        .addValue("change_type", changeType.name())
+                        .addValue("quote_id", quoteIds.get(i)))
+                .toArray(SqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(sql, batchArgs);
+    }
+
+    @Override
+    public ImmutableList<QuoteChange> findChangesAfter(long afterSeq, int limit) {
+        Preconditions.checkArgument(limit > 0);
+        // The limit must apply to changes rather than to joined change/subject rows, hence the derived table
+        String sql = """
+                select chg.seq, chg.change_type, chg.quote_id, qt.text, qt.attributedTo, subj.subject
+                  from (select seq, change_type, quote_id
+                          from quote_change
+                         where seq > :afterSeq
+                         order by seq
+                         limit :limit) chg
+                  left join quote qt on chg.change_type = 'ADDED' and qt.id = chg.quote_id
+                  left join quote_subject subj on qt.id = subj.quote_id
+                 order by chg.seq""";
+
+        List<QuoteChangeRow> rows = jdbcClient
+                .sql(sql)
+                .param("afterSeq", afterSeq)
+                .param("limit", limit)
+                .query(QuoteChangeRow.class)
+                .list();
+        return rows.stream()
+                .collect(Collectors.groupingBy(QuoteChangeRow::seq, LinkedHashMap::new, Collectors.toList()))
+                .values()
+                .stream()
+                .map(this::toQuoteChange)
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    /**
+     * Increments the last used sequence number by the given count, returning the new last used sequence number.
+     * The row stays locked until the end of the transaction.
+     */
+    private long reserveSequenceNumbers(int count) {
+        var updateCount = jdbcClient.sql("update quote_change_sequence set last_seq = last_seq + :count where id = 1")
+                .param("count", count)
+                .update();
+        Preconditions.checkState(updateCount == 1, "Missing row in table quote_change_sequence");
+        return jdbcClient.sql("select last_seq from quote_change_sequence where id = 1")
+                .query(Long.class)
+                .single();
+    }
+
+    private QuoteChange toQuoteChange(List<QuoteChangeRow> changeRows) {
+        var first = changeRows.getFirst();
+        var quote = Optional.ofNullable(first.text()).map(text -> new Quote(
+                first.quoteId(),
+                text,
+                first.attributedTo(),
+                changeRows.stream()
+                        .flatMap(row -> row.subject().stream())
+                        .collect(ImmutableList.toImmutableList())));
+        return new QuoteChange(first.seq(), QuoteChange.Type.valueOf(first.changeType()), first.quoteId(), quote);
+    }
+
+    record QuoteChangeRow(
+            long seq,
+            String changeType,
+            long quoteId,
+            String text,
+            String attributedTo,
+            Optional<String> subject
+    ) {
+    }
+}
@@ -22,14 +22,17 @@ import eu.cdevreeze.quotes.model.Quote;
 import eu.cdevreeze.quotes.model.QuoteData;
 import eu.cdevreeze.quotes.repository.QuoteRepository;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.simple.JdbcClient;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -45,9 +48,14 @@ import java.util.stream.Collectors;
 public class JdbcQuoteRepository implements QuoteRepository {
 
     private final JdbcClient jdbcClient;
+    private final QuoteWrites quoteWrites;
+    private final JdbcClient streamingJdbcClient;
 
     public JdbcQuoteRepository(DataSource dataSource) {
-        this.jdbcClient = JdbcClient.create(dataSource);
+        var jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.jdbcClient = JdbcClient.create(jdbcTemplate);
+        this.quoteWrites = new QuoteWrites(jdbcTemplate);
+        this.streamingJdbcClient = StreamingQueries.createStreamingJdbcClient(dataSource);
     }
 
     @Override
@@ -56,10 +64,61 @@ public class JdbcQuoteRepository implements QuoteRepository {
         return extractQuotes(rows);
     }
 
+    @Override
+    public void forEachQuote(Consumer<? super Quote> action) {
+        String sql = String.format("%s%n", findQuotesBaseSql) + """
+                order by qt.id""";
+        // Ordered by quote ID, the rows of one quote are adjacent, so only the rows of one quote are kept in memory
+        List<QuoteSubjectRow> quoteRows = new ArrayList<>();
+        streamingJdbcClient.sql(sql).query((RowCallbackHandler) rs -> {
+            var row = new QuoteSubjectRow(
+                    rs.getLong("id"),
+                    rs.getString("text"),
+                    rs.getString("attributedTo"),
+                    Optional.ofNullable(rs.getString("subject"))
+            );
+            if (!quoteRows.isEmpty() && quoteRows.getFirst().id() != row.id()) {
+                action.accept(toQuote(quoteRows));
+                quoteRows.clear();
+            }
+            quoteRows.add(row);
+        });
+        if (!quoteRows.isEmpty()) {
+            action.accept(toQuote(quoteRows));
+        }
+    }
+
+    @Override
+    public ImmutableList<Quote> findQuotesAfter(long afterId, int limit) {
+        Preconditions.checkArgument(limit > 0);
+        // The limit must apply to quotes rather than to joined quote/subject rows, hence the derived table
+        String sql = """
+                select qt.id, qt.text, qt.attributedTo, subj.subject
+                  from (select id, text, attributedTo
+                          from quote
+                         where id > :afterId
+                         order by id
+                         limit :limit) qt
+                  left join quote_subject subj on qt.id = subj.quote_id
+                 order by qt.id""";
+
+        List<QuoteSubjectRow> rows = jdbcClient
+                .sql(sql)
+                .param("afterId", afterId)
+                .param("limit", limit)
+                .query(QuoteSubjectRow.class)
+                .list();
+        return extractQuotes(rows);
+    }
+
     @Override
     public ImmutableList<Quote> findBySubject(String subject) {
+        // Filtering on the joined subjects would lose the other subjects of the quote, hence the subquery
         String sql = String.format("%s%n", findQuotesBaseSql) + """
-                where sub.subject = :subject""";
+                where exists (select 1
+                                from quote_subject filter_subj
+                               where filter_subj.quote_id = qt.id
+                                 and filter_subj.subject = :subject)""";
 
         List<QuoteSubjectRow> rows = jdbcClient
                 .sql(sql)
@@ -82,71 +141,74 @@ public class JdbcQuoteRepository implements QuoteRepository {
         return extractQuotes(rows);
     }
 
+    @Override
+    public ImmutableList<Quote> searchQuotes(String query, int limit) {
+        Preconditions.checkArgument(limit > 0);
+        // Uses the FULLTEXT index on quote.text (MySQL-specific), ranking by relevance
+        String sql = """
+                select qt.id, qt.text, qt.attributedTo, subj.subject
+                  from (select id, text, attributedTo, match (text) against (:query in natural language mode) as score
+                          from quote
+                         where match (text) against (:query in natural language mode)
+                         order by score desc, id
+                         limit :limit) qt
+                  left join quote_subject subj on qt.id = subj.quote_id
+                 order by qt.score desc, qt.id""";
+
+        List<QuoteSubjectRow> rows = jdbcClient
+                .sql(sql)
+                .param("query", query)
+                .param("limit", limit)
+                .query(QuoteSubjectRow.class)
+                .list();
+        return extractQuotes(rows);
+    }
+
+    @Override
+    public Optional<Quote> findRandomQuote() {
+        return RandomQuoteSampling.findRandomQuote(jdbcClient, this);
+    }
+
+    @Override
+    public Optional<Quote> findRandomQuoteBySubject(String subject) {
+        return RandomQuoteSampling.findRandomQuoteBySubject(jdbcClient, this, subject);
+    }
+
     @Override
     public Quote addQuote(QuoteData quote) {
-        var quoteId = addQuoteWithoutSubjects(quote);
-        var quoteWithId =
-                new Quote(quoteId, quote.text(), quote.attributedTo(), quote.subjects());
-        addQuoteSubjects(quoteWithId);
-        return quoteWithId;
+        return quoteWrites.addQuote(quote);
+    }
+
+    @Override
+    public ImmutableList<Quote> addQuotes(List<QuoteData> quotes) {
+        return quoteWrites.addQuotes(quotes);
     }
 
     @Override
-    public void deleteQuote(long quoteId) {
-        deleteQuoteSubjects(quoteId);
-        deleteQuoteWithoutSubjects(quoteId);
+    public boolean deleteQuote(long quoteId) {
+        return quoteWrites.deleteQuote(quoteId);
     }
 
     private ImmutableList<Quote> extractQuotes(List<QuoteSubjectRow> rows) {
         return rows
                 .stream()
-                .collect(Collectors.groupingBy(QuoteSubjectRow::id))
+                .collect(Collectors.groupingBy(QuoteSubjectRow::id, LinkedHashMap::new, Collectors.toList()))
                 .values()
                 .stream()
-                .map(grp -> {
-                            var first = grp.getFirst();
-                            return new Quote(
-                                    first.id(),
-                                    first.text(),
-                                    first.attributedTo(),
-                                    grp.stream()
-                                            .flatMap(row -> row.subject().stream())
-                                            .collect(ImmutableList.toImmutableList())
-                            );
-                        }
-                )
+                .map(this::toQuote)
                 .collect(ImmutableList.toImmutableList());
     }
 
-    private long addQuoteWithoutSubjects(QuoteData quote) {
-        String sql = """
-                insert into quote (text, attributedTo)
-                values (:text, :attributedTo)""";
-        var keyHolder = new GeneratedKeyHolder();
-        var insertCount = jdbcClient.sql(sql)
-                .param("text", quote.text())
-                .param("attributedTo", quote.attributedTo())
-                .update(keyHolder);
-        Preconditions.checkArgument(insertCount >= 1);
-        return Objects.requireNonNull(keyHolder.getKey()).longValue();
-    }
-
-    private void addQuoteSubjects(Quote quote) {
-        String sql = "insert into quote_subject (quote_id, subject) values (:quote_id, :subject)";
-        quote.subjects().forEach(subject -> jdbcClient.sql(sql)
-                .param("quote_id", quote.id())
-                .param("subject", subject)
-                .update());
-    }
-
-    private void deleteQuoteWithoutSubjects(long quoteId) {
-        String sql = "delete from quote where id = :quote_id";
-        jdbcClient.sql(sql).param("quote_id", quoteId).update();
-    }
-
-    private void deleteQuoteSubjects(long quoteId) {
-        String sql = "delete from quote_subject where quote_id = :quote_id";
-        jdbcClient.sql(sql).param("quote_id", quoteId).update();
+    private Quote toQuote(List<QuoteSubjectRow> quoteRows) {
+        var first = quoteRows.getFirst();
+        return new Quote(
+                first.id(),
+                first.text(),
+                first.attributedTo(),
+                quoteRows.stream()
+                        .flatMap(row -> row.subject().stream())
+                        .collect(ImmutableList.toImmutableList())
+        );
     }
 
     private final String findQuotesBaseSql = """
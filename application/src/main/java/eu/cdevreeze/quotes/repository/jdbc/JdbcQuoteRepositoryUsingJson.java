@@ -16,15 +16,16 @@
 
 package eu.cdevreeze.quotes.repository.jdbc;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.internal.utils.ObjectMappers;
 import eu.cdevreeze.quotes.model.Quote;
 import eu.cdevreeze.quotes.model.QuoteData;
 import eu.cdevreeze.quotes.repository.QuoteRepository;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.simple.JdbcClient;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
 
 import javax.sql.DataSource;
@@ -33,8 +34,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * (Spring) JDBC-based QuoteRepository implementation that uses JSON columns.
@@ -49,9 +50,14 @@ import java.util.Optional;
 public class JdbcQuoteRepositoryUsingJson implements QuoteRepository {
 
     private final JdbcClient jdbcClient;
+    private final QuoteWrites quoteWrites;
+    private final JdbcClient streamingJdbcClient;
 
     public JdbcQuoteRepositoryUsingJson(DataSource dataSource) {
-        this.jdbcClient = JdbcClient.create(dataSource);
+        var jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.jdbcClient = JdbcClient.create(jdbcTemplate);
+        this.quoteWrites = new QuoteWrites(jdbcTemplate);
+        this.streamingJdbcClient = StreamingQueries.createStreamingJdbcClient(dataSource);
     }
 
     @Override
@@ -65,39 +71,123 @@ public class JdbcQuoteRepositoryUsingJson implements QuoteRepository {
         return rows.stream().collect(ImmutableList.toImmutableList());
     }
 
+    @Override
+    public void forEachQuote(Consumer<? super Quote> action) {
+        String sql = """
+                select qt.id, qt.text, qt.attributedTo, json_arrayagg(subj.subject) as subjects
+                  from quote qt
+                  left join quote_subject subj on qt.id = subj.quote_id
+                 group by qt.id
+                 order by qt.id""";
+        streamingJdbcClient.sql(sql).query((RowCallbackHandler) rs -> action.accept(mapRow(rs, rs.getRow())));
+    }
+
+    @Override
+    public ImmutableList<Quote> findQuotesAfter(long afterId, int limit) {
+        Preconditions.checkArgument(limit > 0);
+        String sql = """
+                select qt.id, qt.text, qt.attributedTo, json_arrayagg(subj.subject) as subjects
+                  from (select id, text, attributedTo
+                          from quote
+                         where id > :afterId
+                         order by id
+                         limit :limit) qt
+                  left join quote_subject subj on qt.id = subj.quote_id
+                 group by qt.id, qt.text, qt.attributedTo
+                 order by qt.id""";
+        List<Quote> rows = jdbcClient.sql(sql)
+                .param("afterId", afterId)
+                .param("limit", limit)
+                .query(this::mapRow)
+                .list();
+        return rows.stream().collect(ImmutableList.toImmutableList());
+    }
+
     @Override
     public ImmutableList<Quote> findBySubject(String subject) {
-        // Inefficient. Improve the SQL instead to limit the result set.
-        return findAllQuotes().stream()
-                .filter(qt -> qt.subjects().contains(subject)).collect(ImmutableList.toImmutableList());
+        // The subject filter is a subquery, so that json_arrayagg still aggregates all subjects of the quote
+        String sql = """
+                select qt.id, qt.text, qt.attributedTo, json_arrayagg(subj.subject) as subjects
+                  from quote qt
+                  left join quote_subject subj on qt.id = subj.quote_id
+                 where exists (select 1
+                                 from quote_subject filter_subj
+                                where filter_subj.quote_id = qt.id
+                                  and filter_subj.subject = :subject)
+                 group by qt.id""";
+        List<Quote> rows = jdbcClient.sql(sql)
+                .param("subject", subject)
+                .query(this::mapRow)
+                .list();
+        return rows.stream().collect(ImmutableList.toImmutableList());
     }
 
     @Override
     public ImmutableList<Quote> findByAttributedTo(String attributedTo) {
-        // Inefficient. Improve the SQL instead to limit the result set.
-        return findAllQuotes().stream()
-                .filter(qt -> qt.attributedTo().equals(attributedTo)).collect(ImmutableList.toImmutableList());
+        String sql = """
+                select qt.id, qt.text, qt.attributedTo, json_arrayagg(subj.subject) as subjects
+                  from quote qt
+                  left join quote_subject subj on qt.id = subj.quote_id
+                 where qt.attributedTo = :attributedTo
+                 group by qt.id""";
+        List<Quote> rows = jdbcClient.sql(sql)
+                .param("attributedTo", attributedTo)
+                .query(this::mapRow)
+                .list();
+        return rows.stream().collect(ImmutableList.toImmutableList());
+    }
+
+    @Override
+    public ImmutableList<Quote> searchQuotes(String query, int limit) {
+        Preconditions.checkArgument(limit > 0);
+        // Uses the FULLTEXT index on quote.text (MySQL-specific), ranking by relevance
+        String sql = """
+                select qt.id, qt.text, qt.attributedTo, json_arrayagg(subj.subject) as subjects
+                  from (select id, text, attributedTo, match (text) against (:query in natural language mode) as score
+                          from quote
+                         where match (text) against (:query in natural language mode)
+                         order by score desc, id
+                         limit :limit) qt
+                  left join quote_subject subj on qt.id = subj.quote_id
+                 group by qt.id, qt.text, qt.attributedTo, qt.score
+                 order by qt.score desc, qt.id""";
+        List<Quote> rows = jdbcClient.sql(sql)
+                .param("query", query)
+                .param("limit", limit)
+                .query(this::mapRow)
+                .list();
+        return rows.stream().collect(ImmutableList.toImmutableList());
+    }
+
+    @Override
+    public Optional<Quote> findRandomQuote() {
+        return RandomQuoteSampling.findRandomQuote(jdbcClient, this);
+    }
+
+    @Override
+    public Optional<Quote> findRandomQuoteBySubject(String subject) {
+        return RandomQuoteSampling.findRandomQuoteBySubject(jdbcClient, this, subject);
     }
 
     @Override
     public Quote addQuote(QuoteData quote) {
-        var quoteId = addQuoteWithoutSubjects(quote);
-        var quoteWithId =
-                new Quote(quoteId, quote.text(), quote.attributedTo(), quote.subjects());
-        addQuoteSubjects(quoteWithId);
-        return quoteWithId;
+        return quoteWrites.addQuote(quote);
     }
 
     @Override
-    public void deleteQuote(long quoteId) {
-        deleteQuoteSubjects(quoteId);
-        deleteQuoteWithoutSubjects(quoteId);
+    public ImmutableList<Quote> addQuotes(List<QuoteData> quotes) {
+        return quoteWrites.addQuotes(quotes);
+    }
+
+    @Override
+    public boolean deleteQuote(long quoteId) {
+        return quoteWrites.deleteQuote(quoteId);
     }
 
     private Quote mapRow(ResultSet rs, int rowNum) {
         try {
             var subjectsJsonString = Optional.ofNullable(rs.getString("subjects")).orElse("[]");
-            var subjectArray = new ObjectMapper().readValue(subjectsJsonString, String[].class);
+            String[] subjectArray = ObjectMappers.getStringArrayReader().readValue(subjectsJsonString);
             var subjects = Arrays.stream(subjectArray).collect(ImmutableList.toImmutableList());
 
             return new Quote(
@@ -110,35 +200,4 @@ public class JdbcQuoteRepositoryUsingJson implements QuoteRepository {
             throw new RuntimeException(e);
         }
     }
-
-    private long addQuoteWithoutSubjects(QuoteData quote) {
-        String sql = """
-                insert into quote (text, attributedTo)
-                values (:text, :attributedTo)""";
-        var keyHolder = new GeneratedKeyHolder();
-        var insertCount = jdbcClient.sql(sql)
-                .param("text", quote.text())
-                .param("attributedTo", quote.attributedTo())
-                .update(keyHolder);
-        Preconditions.checkArgument(insertCount >= 1);
-        return Objects.requireNonNull(keyHolder.getKey()).longValue();
-    }
-
-    private void addQuoteSubjects(Quote quote) {
-        String sql = "insert into quote_subject (quote_id, subject) values (:quote_id, :subject)";
-        quote.subjects().forEach(subject -> jdbcClient.sql(sql)
-                .param("quote_id", quote.id())
-                .param("subject", subject)
-                .update());
-    }
-
-    private void deleteQuoteWithoutSubjects(long quoteId) {
-        String sql = "delete from quote where id = :quote_id";
-        jdbcClient.sql(sql).param("quote_id", quoteId).update();
-    }
-
-    private void deleteQuoteSubjects(long quoteId) {
-        String sql = "delete from quote_subject where quote_id = :quote_id";
-        jdbcClient.sql(sql).param("quote_id", quoteId).update();
-    }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.repository.jdbc;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.model.QuoteData;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Writes of quotes for the JDBC-based QuoteRepository implementations. The repositories differ in how they
+ * query quotes, but they all store quotes in the same tables "quote" and "quote_subject", so they share
+ * the write path.
+ *
+ * @author Chris de Vreeze
+ */
+final class QuoteWrites {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final JdbcClient jdbcClient;
+
+    QuoteWrites(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jdbcClient = JdbcClient.create(jdbcTemplate);
+    }
+
+    /**
+     * Adds the given quote, returning it with its generated ID. This takes one insert for the quote and, if it has
+     * any subjects, one multi-row insert for all subjects, so the number of statements does not depend on the
+     * number of subjects.
+     */
+    Quote addQuote(QuoteData quote) {
+        var quoteId = addQuoteWithoutSubjects(quote);
+        var quoteWithId =
+                new Quote(quoteId, quote.text(), quote.attributedTo(), quote.subjects());
+        addQuoteSubjects(quoteWithId);
+        return quoteWithId;
+    }
+
+    /**
+     * Adds the given quotes using one batched insert for the quotes and one for all their subjects, returning
+     * them with their generated IDs, in the same order as the input.
+     */
+    ImmutableList<Quote> addQuotes(List<QuoteData> quotes) {
+        if (quotes.isEmpty()) {
+            return ImmutableList.of();
+        }
+        var quoteIds = addQuotesWithoutSubjects(quotes);
+        var quotesWithIds = IntStream.range(0, quotes.size())
+                .mapToObj(i -> {
+                    var quote = quotes.get(i);
+                    return new Quote(quoteIds.get(i), quote.text(), quote.attributedTo(), quote.subjects());
+                })
+                .collect(ImmutableList.toImmutableList());
+        addSubjectsOfQuotes(quotesWithIds);
+        return quotesWithIds;
+    }
+
+    /**
+     * Deletes the quote with the given ID and its subjects, returning false if there is no such quote.
+     */
+    boolean deleteQuote(long quoteId) {
+        deleteQuoteSubjects(quoteId);
+        return deleteQuoteWithoutSubjects(quoteId);
+    }
+
+    private long addQuoteWithoutSubjects(QuoteData quote) {
+        String sql = """
+                insert into quote (text, attributedTo)
+                values (:text, :attributedTo)""";
+        var keyHolder = new GeneratedKeyHolder();
+        var insertCount = jdbcClient.sql(sql)
+                .param("text", quote.text())
+                .param("attributedTo", quote.attributedTo())
+                .update(keyHolder);
+        Preconditions.checkArgument(insertCount >= 1);
+        return Objects.requireNonNull(keyHolder.getKey()).longValue();
+    }
+
+    private void addQuoteSubjects(Quote quote) {
+        if (quote.subjects().isEmpty()) {
+            return;
+        }
+        String sql = "insert into quote_subject (quote_id, subject) values " +
+                IntStream.range(0, quote.subjects().size())
+                        .mapToObj(i -> String.format("(:quote_id, :subject%d)", i))
+                        .collect(Collectors.joining(", "));
+        var statementSpec = jdbcClient.sql(sql).param("quote_id", quote.id());
+        for (int i = 0; i < quote.subjects().size(); i++) {
+            statementSpec = statementSpec.param("subject" + i, quote.subjects().get(i));
+        }
+        statementSpec.update();
+    }
+
+    private ImmutableList<Long> addQuotesWithoutSubjects(List<QuoteData> quotes) {
+        String sql = """
+                insert into quote (text, attributedTo)
+                values (:text, :attributedTo)""";
+        var batchArgs = quotes.stream()
+                .map(quote -> new MapSqlParameterSource()
+                        .addValue("text", quote.text())
+                        .addValue("attributedTo", quote.attributedTo()))
+                .toArray(SqlParameterSource[]::new);
+        var keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(sql, batchArgs, keyHolder);
+        var quoteIds = keyHolder.getKeyList().stream()
+                .map(keys -> ((Number) keys.values().iterator().next()).longValue())
+                .collect(ImmutableList.toImmutableList());
+        Preconditions.checkArgument(quoteIds.size() == quotes.size());
+        return quoteIds;
+    }
+
+    private void addSubjectsOfQuotes(List<Quote> quotes) {
+        String sql = "insert into quote_subject (quote_id, subject) values (:quote_id, :subject)";
+        var batchArgs = quotes.stream()
+                .flatMap(quote -> quote.subjects().stream()
+                        .map(subject -> new MapSqlParameterSource()
+                                .addValue("quote_id", quote.id())
+                                .addValue("subject", subject)))
+                .toArray(SqlParameterSource[]::new);
+        if (batchArgs.length > 0) {
+            jdbcTemplate.batchUpdate(sql, batchArgs);
+        }
+    }
+
+    private boolean deleteQuoteWithoutSubjects(long quoteId) {
+        String sql = "delete from quote where id = :quote_id";
+        return jdbcClient.sql(sql).param("quote_id", quoteId).update() > 0;
+    }
+
+    private void deleteQuoteSubjects(long quoteId) {
+        String sql = "delete from quote_subject where quote_id = :quote_id";
+        jdbcClient.sql(sql).param("quote_id", quoteId).update();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.repository.jdbc;
+
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.repository.QuoteRepository;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Selection of random quotes for the JDBC-based QuoteRepository implementations, without retrieving all
+ * quotes. The selected quote is retrieved with {@link QuoteRepository#findQuotesAfter(long, int)}, so
+ * each repository uses its own query style for that.
+ *
+ * @author Chris de Vreeze
+ */
+final class RandomQuoteSampling {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private RandomQuoteSampling() {
+    }
+
+    /**
+     * Picks a random ID between the minimum and maximum quote ID (both found through the primary key index).
+     * Auto-incremented IDs are mostly dense, so that ID usually exists. If it falls in a gap (of deleted
+     * quotes), another ID is tried, and after the last attempt the first quote after the gap is taken.
+     */
+    static Optional<Quote> findRandomQuote(JdbcClient jdbcClient, QuoteRepository quoteRepository) {
+        var idRange = jdbcClient.sql("select min(id) as min_id, max(id) as max_id from quote")
+                .query((rs, rowNum) -> new IdRange(rs.getLong("min_id"), rs.getLong("max_id"), rs.wasNull()))
+                .single();
+
+        if (idRange.isEmpty()) {
+            return Optional.empty();
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            long candidateId = ThreadLocalRandom.current().nextLong(idRange.minId(), idRange.maxId() + 1);
+            var quote = quoteRepository.findQuotesAfter(candidateId - 1, 1).stream().findFirst();
+
+            if (attempt == MAX_ATTEMPTS || quote.filter(qt -> qt.id() == candidateId).isPresent()) {
+                return quote;
+            }
+        }
+    }
+
+    /**
+     * Picks a random ID between the minimum and maximum ID of the quotes having the given subject, and takes the
+     * first quote with that subject from that ID onwards. The index on quote_subject.subject (which in InnoDB
+     * implicitly ends with the primary key, starting with quote_id) serves both the ID range and that lookup,
+     * so the cost does not grow with the number of quotes having the subject (unlike "limit 1 offset n").
+     * <p>
+     * The quotes having a subject are typically far from dense in the ID range, so the selection is biased:
+     * a quote is picked with a probability proportional to the ID gap preceding it (within the subject). For
+     * showing a random quote that is good enough, but it is no uniform sample.
+     */
+    static Optional<Quote> findRandomQuoteBySubject(JdbcClient jdbcClient, QuoteRepository quoteRepository, String subject) {
+        var idRange = jdbcClient.sql("""
+                        select min(quote_id) as min_id, max(quote_id) as max_id
+                          from quote_subject
+                         where subject = :subject""")
+                .param("subject", subject)
+                .query((rs, rowNum) -> new IdRange(rs.getLong("min_id"), rs.getLong("max_id"), rs.wasNull()))
+                .single();
+
+        if (idRange.isEmpty()) {
+            return Optional.empty();
+        }
+
+        long candidateId = ThreadLocalRandom.current().nextLong(idRange.minId(), idRange.maxId() + 1);
+        var quoteId = jdbcClient.sql("""
+                        select quote_id
+                          from quote_subject
+                         where subject = :subject
+                           and quote_id >= :candidateId
+                         order by quote_id
+                         limit 1""")
+                .param("subject", subject)
+                .param("candidateId", candidateId)
+                .query(Long.class)
+                .optional();
+
+        return quoteId.flatMap(id -> quoteRepository.findQuotesAfter(id - 1, 1).stream().findFirst());
+    }
+
+    private record IdRange(long minId, long maxId, boolean isEmpty) {
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.repository.jdbc;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+import javax.sql.DataSource;
+
+/**
+ * Support for streaming queries in the JDBC-based QuoteRepository implementations, which pass the rows of
+ * a potentially large result set one at a time to a callback, instead of collecting them in a list.
+ * <p>
+ * That alone does not keep memory usage flat, because by default the JDBC driver may read the entire result
+ * set into memory anyway. Hence, the JdbcClient returned here sets a fetch size. Note that MySQL Connector/J
+ * only honours a positive fetch size if connection property "useCursorFetch" is true.
+ *
+ * @author Chris de Vreeze
+ */
+final class StreamingQueries {
+
+    static final int FETCH_SIZE = 1000;
+
+    private StreamingQueries() {
+    }
+
+    static JdbcClient createStreamingJdbcClient(DataSource dataSource) {
+        var jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(FETCH_SIZE);
+        return JdbcClient.create(jdbcTemplate);
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.sampledata;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import eu.cdevreeze.quotes.internal.utils.ObjectMappers;
+import eu.cdevreeze.quotes.model.QuoteData;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic generator of (arbitrarily many) synthetic quotes, for load tests and benchmarks. The same
+ * seed always gives the same quotes, so performance work can use a reproducible dataset.
+ * <p>
+ * The distributions are meant to be somewhat realistic: the authors follow a Zipf distribution (a few
+ * authors have many quotes, most authors have few), the number of subjects per quote follows a power law,
+ * the subjects and words are Zipf-distributed as well, and text lengths vary (log-normally) up to the
+ * 5000 characters allowed by the database column.
+ * <p>
+ * Quotes are generated lazily, so millions of them can be streamed into a repository or file without
+ * keeping them in memory. To write them to a file (a JSON array, or NDJSON if the file name ends with
+ * ".ndjson"), run the main method with the file path, number of quotes and optional seed as arguments.
+ *
+ * @author Chris de Vreeze
+ */
+public final class SyntheticQuoteData {
+
+    public static final int MAX_TEXT_LENGTH = 5000;
+    public static final int MAX_SUBJECTS_PER_QUOTE = 10;
+
+    private static final int NUMBER_OF_AUTHORS = 20_000;
+    private static final int NUMBER_OF_SUBJECTS = 2_000;
+    private static final int NUMBER_OF_WORDS = 50_000;
+
+    private static final String[] SYLLABLES = {
+            "a", "an", "ar", "ba", "be", "bi", "bo", "ca", "ce", "da", "de", "di", "do", "e", "el", "en", "er",
+            "fa", "fi", "ga", "go", "ha", "he", "hi", "i", "in", "is", "ja", "ka", "ki", "la", "le", "li", "lo",
+            "ma", "me", "mi", "mo", "na", "ne", "ni", "no", "o", "on", "or", "pa", "pe", "ra", "re", "ri", "ro",
+            "sa", "se", "si", "so", "ta", "te", "ti", "to", "u", "un", "va", "ve", "vi", "wa", "we", "ya", "za"
+    };
+
+    private final long seed;
+    private final ImmutableList<String> authors;
+    private final ImmutableList<String> subjects;
+    private final ImmutableList<String> words;
+
+    private final ZipfDistribution authorDistribution = new ZipfDistribution(NUMBER_OF_AUTHORS, 1.1);
+    private final ZipfDistribution subjectDistribution = new ZipfDistribution(NUMBER_OF_SUBJECTS, 1.0);
+    private final ZipfDistribution wordDistribution = new ZipfDistribution(NUMBER_OF_WORDS, 1.0);
+    // Power law for the number of subjects (minus 1), so most quotes have 1 subject, and few have many subjects
+    private final ZipfDistribution subjectCountDistribution = new ZipfDistribution(MAX_SUBJECTS_PER_QUOTE, 2.0);
+
+    public SyntheticQuoteData(long seed) {
+        this.seed = seed;
+        // The vocabularies depend on the seed as well, using their own random generator
+        var random = new SplittableRandom(seed);
+        this.authors = generateNames(NUMBER_OF_AUTHORS, 2, random);
+        this.subjects = generateNames(NUMBER_OF_SUBJECTS, 1, random);
+        this.words = generateWords(NUMBER_OF_WORDS, random);
+    }
+
+    public ImmutableList<String> getAuthors() {
+        return authors;
+    }
+
+    public ImmutableList<String> getSubjects() {
+        return subjects;
+    }
+
+    public ImmutableList<String> getWords() {
+        return words;
+    }
+
+    /**
+     * Returns an author, with the same (Zipf) distribution as the authors of the generated quotes.
+     * This is handy for realistic queries against the generated quotes.
+     */
+    public String sampleAuthor(RandomGenerator random) {
+        return authors.get(authorDistribution.sample(random));
+    }
+
+    public String sampleSubject(RandomGenerator random) {
+        return subjects.get(subjectDistribution.sample(random));
+    }
+
+    public String sampleWord(RandomGenerator random) {
+        return words.get(wordDistribution.sample(random));
+    }
+
+    /**
+     * Returns a lazy sequential stream of the given number of generated quotes. Each call returns the same quotes.
+     * The stream must not be turned into a parallel stream.
+     */
+    public Stream<QuoteData> quotes(long numberOfQuotes) {
+        Preconditions.checkArgument(numberOfQuotes >= 0);
+        // Split off a random generator independent of the one used for the vocabularies
+        var random = new SplittableRandom(seed).split();
+        return LongStream.range(0, numberOfQuotes).mapToObj(i -> generateQuote(random));
+    }
+
+    /**
+     * Passes the given number of generated quotes, in batches of the given size, to the given consumer,
+     * such as {@code QuoteRepository::addQuotes} or {@code QuoteService::addQuotes}.
+     */
+    public void addQuotes(long numberOfQuotes, int batchSize, Consumer<ImmutableList<QuoteData>> batchConsumer) {
+        Preconditions.checkArgument(batchSize > 0);
+        Iterators.partition(quotes(numberOfQuotes).iterator(), batchSize)
+                .forEachRemaining(batch -> batchConsumer.accept(ImmutableList.copyOf(batch)));
+    }
+
+    /**
+     * Writes the given number of generated quotes as one JSON array (as read by the QuoteAdder client program).
+     * The output stream is not closed.
+     */
+    public void writeJsonArray(long numberOfQuotes, OutputStream outputStream) throws IOException {
+        try (SequenceWriter sequenceWriter = createObjectWriter().writeValuesAsArray(outputStream)) {
+            writeQuotes(numberOfQuotes, sequenceWriter);
+        }
+    }
+
+    /**
+     * Writes the given number of generated quotes as NDJSON (newline-delimited JSON), so one quote per line.
+     * The output stream is not closed.
+     */
+    public void writeNdjson(long numberOfQuotes, OutputStream outputStream) throws IOException {
+        try (SequenceWriter sequenceWriter = createObjectWriter().withRootValueSeparator("\n").writeValues(outputStream)) {
+            writeQuotes(numberOfQuotes, sequenceWriter);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Preconditions.checkArgument(args.length >= 2, "Usage: SyntheticQuoteData <output file> <number of quotes> [<seed>]");
+        var outputFile = Path.of(args[0]);
+        var numberOfQuotes = Long.parseLong(args[1]);
+        var seed = (args.length >= 3) ? Long.parseLong(args[2]) : 0L;
+
+        var syntheticQuoteData = new SyntheticQuoteData(seed);
+        try (var outputStream = new BufferedOutputStream(Files.newOutputStream(outputFile))) {
+            if (outputFile.getFileName().toString().endsWith(".ndjson")) {
+                syntheticQuoteData.writeNdjson(numberOfQuotes, outputStream);
+            } else {
+                syntheticQuoteData.writeJsonArray(numberOfQuotes, outputStream);
+            }
+        }
+    }
+
+    private static ObjectWriter createObjectWriter() {
+        return ObjectMappers.getObjectMapper(false).writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    private void writeQuotes(long numberOfQuotes, SequenceWriter sequenceWriter) throws IOException {
+        var quoteIterator = quotes(numberOfQuotes).iterator();
+        while (quoteIterator.hasNext()) {
+            sequenceWriter.write(quoteIterator.next());
+        }
+    }
+
+    private QuoteData generateQuote(SplittableRandom random) {
+        var text = generateText(random);
+        var attributedTo = sampleAuthor(random);
+
+        int numberOfSubjects = 1 + subjectCountDistribution.sample(random);
+        Set<String> quoteSubjects = new LinkedHashSet<>();
+        for (int i = 0; i < numberOfSubjects; i++) {
+            quoteSubjects.add(sampleSubject(random));
+        }
+        return new QuoteData(text, attributedTo, ImmutableList.copyOf(quoteSubjects));
+    }
+
+    private String generateText(SplittableRandom random) {
+        // Log-normal length, with a median of 120 characters, and a long tail up to the maximum
+        int targetLength = (int) Math.max(10, Math.min(MAX_TEXT_LENGTH - 1, Math.exp(Math.log(120) + 0.9 * random.nextGaussian())));
+
+        var sb = new StringBuilder(targetLength + 20);
+        boolean startOfSentence = true;
+        while (sb.length() < targetLength) {
+            var word = sampleWord(random);
+            if (sb.length() + word.length() + 2 > MAX_TEXT_LENGTH) {
+                break;
+            }
+            if (!sb.isEmpty()) {
+                sb.append(' ');
+            }
+            sb.append(startOfSentence ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+            startOfSentence = random.nextInt(12) == 0;
+            if (startOfSentence) {
+                sb.append('.');
+            }
+        }
+        if (!startOfSentence) {
+            sb.append('.');
+        }
+        return sb.toString();
+    }
+
+    private static ImmutableList<String> generateNames(int numberOfNames, int numberOfParts, SplittableRandom random) {
+        Set<String> names = new LinkedHashSet<>();
+        while (names.size() < numberOfNames) {
+            var name = IntStream.range(0, numberOfParts)
+                    .mapToObj(i -> generateWord(random, 2, 4))
+                    .map(word -> (numberOfParts == 1) ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1))
+                    .reduce((a, b) -> a + " " + b)
+                    .orElseThrow();
+            names.add(name);
+        }
+        return ImmutableList.copyOf(names);
+    }
+
+    private static ImmutableList<String> generateWords(int numberOfWords, SplittableRandom random) {
+        // Short words come first, and are therefore the most frequent ones. The maximum number of syllables
+        // grows just fast enough for there to be enough distinct words.
+        Set<String> result = new LinkedHashSet<>();
+        int maxSyllables = 1;
+        while (result.size() < numberOfWords) {
+            while (Math.pow(SYLLABLES.length, maxSyllables) < 2.0 * (result.size() + 1)) {
+                maxSyllables += 1;
+            }
+            result.add(generateWord(random, 1, maxSyllables));
+        }
+        return ImmutableList.copyOf(result);
+    }
+
+    private static String generateWord(SplittableRandom random, int minSyllables, int maxSyllables) {
+        var sb = new StringBuilder();
+        int numberOfSyllables = random.nextInt(minSyllables, maxSyllables + 1);
+        for (int i = 0; i < numberOfSyllables; i++) {
+            sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Zipf distribution over ranks 0 (the most frequent one) to n - 1, with the given exponent. Sampling
+     * uses binary search in the precomputed cumulative probabilities.
+     */
+    private static final class ZipfDistribution {
+
+        private final double[] cumulativeProbabilities;
+
+        ZipfDistribution(int n, double exponent) {
+            cumulativeProbabilities = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, exponent);
+                cumulativeProbabilities[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cumulativeProbabilities[i] /= sum;
+            }
+        }
+
+        int sample(RandomGenerator random) {
+            int index = Arrays.binarySearch(cumulativeProbabilities, random.nextDouble());
+            int rank = (index >= 0) ? index : -index - 1;
+            return Math.min(rank, cumulativeProbabilities.length - 1);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.service;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.model.QuoteChange;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous quotes query service interface. The queries of the (transactional) QuoteService run on an
+ * executor dedicated to database work, so the calling thread (e.g. a servlet request thread) is not tied up
+ * while a query runs.
+ * <p>
+ * The returned CompletableFuture fails with a {@link java.util.concurrent.RejectedExecutionException} if too many
+ * queries are already waiting, and with a {@link java.util.concurrent.TimeoutException} if the query has not
+ * completed within the default timeout. Callers may apply a shorter deadline per call, using method
+ * {@link CompletableFuture#orTimeout(long, java.util.concurrent.TimeUnit)} on the returned CompletableFuture.
+ * Either way, a query that has not started yet when its CompletableFuture completes is not run at all.
+ *
+ * @author Chris de Vreeze
+ */
+public interface AsyncQuoteService {
+
+    CompletableFuture<ImmutableList<Quote>> findQuotesAfter(long afterId, int limit);
+
+    CompletableFuture<ImmutableList<Quote>> findBySubject(String subject);
+
+    CompletableFuture<ImmutableList<Quote>> findByAttributedTo(String attributedTo);
+
+    CompletableFuture<ImmutableList<Quote>> searchQuotes(String query, int limit);
+
+    CompletableFuture<Optional<Quote>> findRandomQuote();
+
+    CompletableFuture<Optional<Quote>> findRandomQuoteBySubject(String subject);
+
+    CompletableFuture<ImmutableList<QuoteChange>> findChangesAfter(long afterSeq, int limit);
+}
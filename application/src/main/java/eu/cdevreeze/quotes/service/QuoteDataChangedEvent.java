@@ -0,0 +1,36 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.quotes.service;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.model.Quote;
+
+/**
+ * Application event published by the QuoteService within each transaction that adds or deletes quotes.
+ * Listeners that must only see committed changes should be TransactionalEventListener-annotated.
+ *
+ * @author Chris de Vreeze
+ */
+public record QuoteDataChangedEvent(ImmutableList<Quote> addedQuotes, ImmutableList<Long> deletedQuoteIds) {
+
+    public static QuoteDataChangedEvent quotesAdded(ImmutableList<Quote> addedQuotes) {
+        return new QuoteDataChangedEvent(addedQuotes, ImmutableList.of());
+    }
+
+    public static QuoteDataChangedEvent quoteDeleted(long quoteId) {
+        return new QuoteDataChangedEvent(ImmutableList.of(), ImmutableList.of(quoteId));
+    }
+}
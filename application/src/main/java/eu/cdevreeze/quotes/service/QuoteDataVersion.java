@@ -0,0 +1,41 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.quotes.service;
+
+/**
+ * Version of the quote data, increased after each committed write through the QuoteService. It is meant for
+ * HTTP conditional requests, as (strong) ETag. The ETag contains an ID of the running application instance,
+ * because version numbering restarts with the application.
+ * <p>
+ * There is deliberately no Last-Modified counterpart. Its precision of one second is too coarse, because the
+ * quotes may change several times per second, so a client only sending If-Modified-Since could wrongly get
+ * status 304 (Not Modified) after a write within the same second.
+ * <p>
+ * Note that the version only tracks writes through this application instance. Like the caching QuoteRepository,
+ * it assumes that the database is not updated otherwise.
+ *
+ * @author Chris de Vreeze
+ */
+public record QuoteDataVersion(String instanceId, long version) {
+
+    public String etag() {
+        return instanceId + "-" + version;
+    }
+
+    public QuoteDataVersion next() {
+        return new QuoteDataVersion(instanceId, version + 1);
+    }
+}
@@ -18,8 +18,13 @@ package eu.cdevreeze.quotes.service;
 
 import com.google.common.collect.ImmutableList;
 import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.model.QuoteChange;
 import eu.cdevreeze.quotes.model.QuoteData;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
 /**
  * Transactional quotes service interface.
  *
@@ -29,11 +34,44 @@ public interface QuoteService {
 
     ImmutableList<Quote> findAllQuotes();
 
+    /**
+     * Passes all quotes, ordered by ID, one at a time to the given action, within one (read-only) transaction.
+     * See {@link eu.cdevreeze.quotes.repository.QuoteRepository#forEachQuote(Consumer)}.
+     */
+    void forEachQuote(Consumer<? super Quote> action);
+
+    ImmutableList<Quote> findQuotesAfter(long afterId, int limit);
+
     ImmutableList<Quote> findBySubject(String subject);
 
     ImmutableList<Quote> findByAttributedTo(String attributedTo);
 
+    ImmutableList<Quote> searchQuotes(String query, int limit);
+
+    Optional<Quote> findRandomQuote();
+
+    Optional<Quote> findRandomQuoteBySubject(String subject);
+
     Quote addQuote(QuoteData quote);
 
-    void deleteQuote(long quoteId);
+    ImmutableList<Quote> addQuotes(List<QuoteData> quotes);
+
+    /**
+     * Deletes the quote with the given ID, returning false if there is no such quote. Only an actual deletion
+     * is recorded as change (and published as QuoteDataChangedEvent).
+     */
+    boolean deleteQuote(long quoteId);
+
+    /**
+     * Returns at most {@code limit} changes (quotes added or deleted through this service) with a sequence number
+     * greater than {@code afterSeq}, ordered by sequence number. See
+     * {@link eu.cdevreeze.quotes.repository.QuoteChangeRepository#findChangesAfter(long, int)}.
+     */
+    ImmutableList<QuoteChange> findChangesAfter(long afterSeq, int limit);
+
+    /**
+     * Returns the current version of the quote data, which is increased after each committed write through
+     * this service. If needed, obtain the version before querying quotes, so that it is never newer than the data.
+     */
+    QuoteDataVersion getDataVersion();
 }
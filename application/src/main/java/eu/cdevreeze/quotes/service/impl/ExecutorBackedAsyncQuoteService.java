@@ -0,0 +1,283 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.service.impl;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.model.QuoteChange;
+import eu.cdevreeze.quotes.service.AsyncQuoteService;
+import eu.cdevreeze.quotes.service.QuoteService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * AsyncQuoteService implementation running the queries of the (transactional) QuoteService with bounded
+ * concurrency: at most a fixed number of queries run at the same time, and at most a bounded number of queries
+ * wait for their turn.
+ * <p>
+ * More concurrent queries than database connections (in the connection pool) would only make them wait for a
+ * connection, so by default as many queries run concurrently as there are pooled connections. The bound on waiting
+ * queries makes an overloaded application reject queries immediately, instead of queueing them until the clients
+ * have given up.
+ * <p>
+ * If virtual threads are enabled (property "spring.threads.virtual.enabled"), each query runs on its own virtual
+ * thread, and a semaphore bounds the number of running queries. Otherwise the queries run on a dedicated pool of
+ * platform threads, with a bounded queue of waiting queries.
+ * <p>
+ * Note that a timeout does not interrupt a query that is already running. It only releases the caller, and
+ * withdraws the query if it is still waiting, so that it frees its place among the waiting queries.
+ *
+ * @author Chris de Vreeze
+ */
+@Service
+public class ExecutorBackedAsyncQuoteService implements AsyncQuoteService {
+
+    private final QuoteService quoteService;
+    private final QueryScheduler queryScheduler;
+    private final Duration timeout;
+
+    public ExecutorBackedAsyncQuoteService(
+            QuoteService quoteService,
+            @Value("${implementation.asyncQuoteService.threads:${spring.datasource.hikari.maximum-pool-size:10}}") int threads,
+            @Value("${implementation.asyncQuoteService.queueCapacity:1000}") int queueCapacity,
+            @Value("${implementation.asyncQuoteService.timeout:10s}") Duration timeout,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads
+    ) {
+        Preconditions.checkArgument(threads > 0);
+        Preconditions.checkArgument(queueCapacity > 0);
+        Preconditions.checkArgument(timeout.isPositive());
+
+        this.quoteService = quoteService;
+        this.queryScheduler = virtualThreads ?
+                new VirtualThreadQueryScheduler(threads, queueCapacity) :
+                new ThreadPoolQueryScheduler(threads, queueCapacity);
+        this.timeout = timeout;
+    }
+    @Override
+    public CompletableFuture<ImmutableList<Quote>> findQuotesAfter(long afterId, int limit) {
+        return supplyAsync(() -> quoteService.findQuotesAfter(afterId, limit));
+    }
+
+    @Override
+    public CompletableFuture<ImmutableList<Quote>> findBySubject(String subject) {
+        return supplyAsync(() -> quoteService.findBySubject(subject));
+    }
+
+    @Override
+    public CompletableFuture<ImmutableList<Quote>> findByAttributedTo(String attributedTo) {
+        return supplyAsync(() -> quoteService.findByAttributedTo(attributedTo));
+    }
+
+    @Override
+    public CompletableFuture<ImmutableList<Quote>> searchQuotes(String query, int limit) {
+        return supplyAsync(() -> quoteService.searchQuotes(query, limit));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Quote>> findRandomQuote() {
+        return supplyAsync(quoteService::findRandomQuote);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Quote>> findRandomQuoteBySubject(String subject) {
+        return supplyAsync(() -> quoteService.findRandomQuoteBySubject(subject));
+    }
+
+    @Override
+    public CompletableFuture<ImmutableList<QuoteChange>> findChangesAfter(long afterSeq, int limit) {
+        return supplyAsync(() -> quoteService.findChangesAfter(afterSeq, limit));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        queryScheduler.shutdown();
+    }
+
+    /**
+     * Returns the number of queries waiting for their turn. Queries that timed out or were cancelled while waiting
+     * are withdrawn, so they no longer take up capacity.
+     */
+    int getWaitingQueryCount() {
+        return queryScheduler.getWaitingQueryCount();
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(Supplier<T> query) {
+        var result = new CompletableFuture<T>();
+        Runnable task = () -> {
+            // Skip the query if the caller no longer waits for it (in case it was not removed from the queue in time)
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                result.complete(query.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        };
+        Runnable withdrawal;
+        try {
+            withdrawal = queryScheduler.schedule(task);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        // Free the capacity taken by a query that is no longer waited for (a no-op if it has already started)
+        result.whenComplete((value, exception) -> {
+            if (exception != null) {
+                withdrawal.run();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs queries with bounded concurrency and a bounded number of waiting queries.
+     */
+    private interface QueryScheduler {
+
+        /**
+         * Schedules the given query task, returning the action that withdraws it if it has not started yet.
+         * Throws a RejectedExecutionException if too many queries are already waiting.
+         */
+        Runnable schedule(Runnable task);
+
+        int getWaitingQueryCount();
+
+        void shutdown();
+    }
+
+    /**
+     * QueryScheduler using a fixed pool of platform threads and a bounded queue.
+     */
+    private static final class ThreadPoolQueryScheduler implements QueryScheduler {
+
+        private final ThreadPoolExecutor queryExecutor;
+
+        ThreadPoolQueryScheduler(int threads, int queueCapacity) {
+            this.queryExecutor = new ThreadPoolExecutor(
+                    threads,
+                    threads,
+                    0L,
+                    TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    Thread.ofPlatform().name("quote-query-", 1).daemon().factory(),
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+
+        @Override
+        public Runnable schedule(Runnable task) {
+            queryExecutor.execute(task);
+            return () -> queryExecutor.remove(task);
+        }
+
+        @Override
+        public int getWaitingQueryCount() {
+            return queryExecutor.getQueue().size();
+        }
+
+        @Override
+        public void shutdown() {
+            queryExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * QueryScheduler starting a virtual thread per query. A fair semaphore bounds the number of running queries,
+     * and another one the number of admitted (running or waiting) queries.
+     * <p>
+     * A withdrawn query immediately frees its admission, but its virtual thread still waits for its turn, and then
+     * just ends. Such a virtual thread is cheap, and this way no thread needs to be interrupted.
+     */
+    private static final class VirtualThreadQueryScheduler implements QueryScheduler {
+
+        private enum State {WAITING, RUNNING, WITHDRAWN}
+
+        private final ExecutorService queryExecutor =
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("quote-query-", 1).factory());
+        private final Semaphore runningQueries;
+        private final Semaphore admittedQueries;
+        private final AtomicInteger waitingQueryCount = new AtomicInteger();
+
+        VirtualThreadQueryScheduler(int maxRunningQueries, int maxWaitingQueries) {
+            this.runningQueries = new Semaphore(maxRunningQueries, true);
+            this.admittedQueries = new Semaphore(maxRunningQueries + maxWaitingQueries);
+        }
+
+        @Override
+        public Runnable schedule(Runnable task) {
+            if (!admittedQueries.tryAcquire()) {
+                throw new RejectedExecutionException("Too many waiting queries");
+            }
+            var state = new AtomicReference<>(State.WAITING);
+            waitingQueryCount.incrementAndGet();
+            try {
+                queryExecutor.execute(() -> run(task, state));
+            } catch (RejectedExecutionException e) {
+                withdraw(state);
+                throw e;
+            }
+            return () -> withdraw(state);
+        }
+
+        @Override
+        public int getWaitingQueryCount() {
+            return waitingQueryCount.get();
+        }
+
+        @Override
+        public void shutdown() {
+            queryExecutor.shutdownNow();
+        }
+
+        private void run(Runnable task, AtomicReference<State> state) {
+            try {
+                runningQueries.acquire();
+            } catch (InterruptedException e) {
+                // Shut down
+                return;
+            }
+            try {
+                if (state.compareAndSet(State.WAITING, State.RUNNING)) {
+                    waitingQueryCount.decrementAndGet();
+                    try {
+                        task.run();
+                    } finally {
+                        admittedQueries.release();
+                    }
+                }
+            } finally {
+                runningQueries.release();
+            }
+        }
+
+        private void withdraw(AtomicReference<State> state) {
+            if (state.compareAndSet(State.WAITING, State.WITHDRAWN)) {
+                waitingQueryCount.decrementAndGet();
+                admittedQueries.release();
+            }
+        }
+    }
+}
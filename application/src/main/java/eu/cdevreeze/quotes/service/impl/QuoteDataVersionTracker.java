@@ -0,0 +1,50 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.quotes.service.impl;
+
+import eu.cdevreeze.quotes.service.QuoteDataChangedEvent;
+import eu.cdevreeze.quotes.service.QuoteDataVersion;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps track of the QuoteDataVersion, increasing it after each committed QuoteDataChangedEvent.
+ * <p>
+ * Since the version is increased only after commit, a reader that obtains the version before querying
+ * the quotes never pairs older data with a newer version. At worst newer data is paired with an older
+ * version, which only costs the client an extra download later.
+ *
+ * @author Chris de Vreeze
+ */
+@Service
+public class QuoteDataVersionTracker {
+
+    private final AtomicReference<QuoteDataVersion> currentVersion = new AtomicReference<>(
+            new QuoteDataVersion(Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36), 1L));
+
+    public QuoteDataVersion getCurrentVersion() {
+        return currentVersion.get();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onQuoteDataChanged(QuoteDataChangedEvent event) {
+        currentVersion.updateAndGet(QuoteDataVersion::next);
+    }
+}
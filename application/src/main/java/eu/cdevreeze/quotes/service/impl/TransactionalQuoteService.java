@@ -18,14 +18,27 @@ package eu.cdevreeze.quotes.service.impl;
 
 import com.google.common.collect.ImmutableList;
 import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.model.QuoteChange;
 import eu.cdevreeze.quotes.model.QuoteData;
+import eu.cdevreeze.quotes.repository.QuoteChangeRepository;
 import eu.cdevreeze.quotes.repository.QuoteRepository;
+import eu.cdevreeze.quotes.service.QuoteDataChangedEvent;
+import eu.cdevreeze.quotes.service.QuoteDataVersion;
 import eu.cdevreeze.quotes.service.QuoteService;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
 /**
  * Transactional quotes service implementation.
+ * <p>
+ * Each write publishes a QuoteDataChangedEvent within its transaction, which among others drives the
+ * QuoteDataVersion (after commit). Each write also appends to the quote change log, in the same transaction,
+ * after the quotes themselves have been written (see QuoteChangeRepository).
  *
  * @author Chris de Vreeze
  */
@@ -33,9 +46,20 @@ import org.springframework.transaction.annotation.Transactional;
 public class TransactionalQuoteService implements QuoteService {
 
     private final QuoteRepository quoteRepository;
+    private final QuoteChangeRepository quoteChangeRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final QuoteDataVersionTracker dataVersionTracker;
 
-    public TransactionalQuoteService(QuoteRepository quoteRepository) {
+    public TransactionalQuoteService(
+            QuoteRepository quoteRepository,
+            QuoteChangeRepository quoteChangeRepository,
+            ApplicationEventPublisher eventPublisher,
+            QuoteDataVersionTracker dataVersionTracker
+    ) {
         this.quoteRepository = quoteRepository;
+        this.quoteChangeRepository = quoteChangeRepository;
+        this.eventPublisher = eventPublisher;
+        this.dataVersionTracker = dataVersionTracker;
     }
 
     @Override
@@ -44,6 +68,18 @@ public class TransactionalQuoteService implements QuoteService {
         return quoteRepository.findAllQuotes();
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachQuote(Consumer<? super Quote> action) {
+        quoteRepository.forEachQuote(action);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ImmutableList<Quote> findQuotesAfter(long afterId, int limit) {
+        return quoteRepository.findQuotesAfter(afterId, limit);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public ImmutableList<Quote> findBySubject(String subject) {
@@ -56,15 +92,64 @@ public class TransactionalQuoteService implements QuoteService {
         return quoteRepository.findByAttributedTo(attributedTo);
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public ImmutableList<Quote> searchQuotes(String query, int limit) {
+        return quoteRepository.searchQuotes(query, limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Quote> findRandomQuote() {
+        return quoteRepository.findRandomQuote();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Quote> findRandomQuoteBySubject(String subject) {
+        return quoteRepository.findRandomQuoteBySubject(subject);
+    }
+
     @Override
     @Transactional
     public Quote addQuote(QuoteData quote) {
-        return quoteRepository.addQuote(quote);
+        var addedQuote = quoteRepository.addQuote(quote);
+        quoteChangeRepository.addChanges(QuoteChange.Type.ADDED, ImmutableList.of(addedQuote.id()));
+        eventPublisher.publishEvent(QuoteDataChangedEvent.quotesAdded(ImmutableList.of(addedQuote)));
+        return addedQuote;
+    }
+
+    @Override
+    @Transactional
+    public ImmutableList<Quote> addQuotes(List<QuoteData> quotes) {
+        var addedQuotes = quoteRepository.addQuotes(quotes);
+        quoteChangeRepository.addChanges(
+                QuoteChange.Type.ADDED,
+                addedQuotes.stream().map(Quote::id).collect(ImmutableList.toImmutableList()));
+        eventPublisher.publishEvent(QuoteDataChangedEvent.quotesAdded(addedQuotes));
+        return addedQuotes;
     }
 
     @Override
     @Transactional
-    public void deleteQuote(long quoteId) {
-        quoteRepository.deleteQuote(quoteId);
+    public boolean deleteQuote(long quoteId) {
+        // Deleting a non-existing quote (e.g. when a DELETE request is retried) changes nothing
+        if (!quoteRepository.deleteQuote(quoteId)) {
+            return false;
+        }
+        quoteChangeRepository.addChanges(QuoteChange.Type.DELETED, ImmutableList.of(quoteId));
+        eventPublisher.publishEvent(QuoteDataChangedEvent.quoteDeleted(quoteId));
+        return true;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ImmutableList<QuoteChange> findChangesAfter(long afterSeq, int limit) {
+        return quoteChangeRepository.findChangesAfter(afterSeq, limit);
+    }
+
+    @Override
+    public QuoteDataVersion getDataVersion() {
+        return dataVersionTracker.getCurrentVersion();
     }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.web;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.lang.Nullable;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Optional;
+
+/**
+ * MappingJackson2HttpMessageConverter that writes compact JSON, unless pretty-printing is requested with
+ * request parameter "pretty=true". It holds 2 pre-built ObjectMappers, one for compact and one for pretty-printed
+ * output, so no ObjectMapper is reconfigured (or created) per request. Reading JSON always uses the compact one.
+ * <p>
+ * Compact JSON is the default, because most API traffic comes from programs, for which the whitespace
+ * of pretty-printed JSON only adds bytes to send and serialization time.
+ *
+ * @author Chris de Vreeze
+ */
+public class PrettyPrintNegotiatingHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    public static final String PRETTY_PARAMETER_NAME = "pretty";
+
+    private final ObjectMapper prettyObjectMapper;
+
+    public PrettyPrintNegotiatingHttpMessageConverter(ObjectMapper compactObjectMapper, ObjectMapper prettyObjectMapper) {
+        super(compactObjectMapper);
+        this.prettyObjectMapper = prettyObjectMapper;
+    }
+
+    /**
+     * Returns true if the current (servlet) request has request parameter "pretty" with value "true".
+     */
+    public static boolean isPrettyPrintingRequested() {
+        return Optional.ofNullable(RequestContextHolder.getRequestAttributes())
+                .filter(attrs -> attrs instanceof ServletRequestAttributes)
+                .map(attrs -> ((ServletRequestAttributes) attrs).getRequest().getParameter(PRETTY_PARAMETER_NAME))
+                .map(Boolean::parseBoolean)
+                .orElse(false);
+    }
+
+    /**
+     * Replaces the ObjectWriter of the compact ObjectMapper by one of the pretty-printing ObjectMapper, if
+     * pretty-printing has been requested. Like the superclass, the ObjectWriter gets the full (generic) type
+     * only for container types.
+     */
+    @Override
+    protected ObjectWriter customizeWriter(ObjectWriter writer, @Nullable JavaType javaType, @Nullable MediaType contentType) {
+        if (!isPrettyPrintingRequested()) {
+            return writer;
+        }
+        return (javaType != null && javaType.isContainerType()) ?
+                prettyObjectMapper.writerFor(javaType) :
+                prettyObjectMapper.writer();
+    }
+}
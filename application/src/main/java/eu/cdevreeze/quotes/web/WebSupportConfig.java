@@ -20,7 +20,6 @@ import eu.cdevreeze.quotes.internal.utils.ObjectMappers;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.converter.HttpMessageConverter;
-import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 
 /**
  * Additional Spring beans needed in the web layer.
@@ -32,7 +31,8 @@ public class WebSupportConfig {
 
     /**
      * Replacement for the default MappingJackson2HttpMessageConverter.
-     * This replacement is aware of Guava immutable collections, and it prettifies JSON output.
+     * This replacement is aware of Guava immutable collections, and it writes compact JSON, unless JSON output
+     * is explicitly requested to be prettified (see {@link PrettyPrintNegotiatingHttpMessageConverter}).
      * <p>
      * This message converter is (for example) used in RestController-annotated controllers to create
      * an HTTP response body from Java records (e.g. containing Guava collections). This Configuration-annotated
@@ -42,6 +42,8 @@ public class WebSupportConfig {
      */
     @Bean
     public HttpMessageConverter<Object> httpMessageConverter() {
-        return new MappingJackson2HttpMessageConverter(ObjectMappers.getObjectMapper());
+        return new PrettyPrintNegotiatingHttpMessageConverter(
+                ObjectMappers.getObjectMapper(false),
+                ObjectMappers.getObjectMapper(true));
     }
 }
@@ -17,16 +17,20 @@
 package eu.cdevreeze.quotes.web.html;
 
 import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.model.Quote;
 import eu.cdevreeze.quotes.service.QuoteService;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.ModelAndView;
 
 import java.util.Optional;
 
 /**
  * Quotes web controller (for use in the HTML site).
+ * <p>
+ * Like the REST controller, it supports conditional requests based on the current QuoteDataVersion.
  *
  * @author Chris de Vreeze
  */
@@ -42,14 +46,15 @@ public class QuotesController {
     @GetMapping(value = "quotes.html")
     public ModelAndView quotes(
             @RequestParam(required = false) String attributedTo,
-            @RequestParam(required = false) String subject
+            @RequestParam(required = false) String subject,
+            WebRequest webRequest
     ) {
+        var dataVersion = quoteService.getDataVersion();
+        if (webRequest.checkNotModified(dataVersion.etag())) {
+            return null;
+        }
         var modelAndView = new ModelAndView("quotes.html");
-        var quotes = quoteService.findAllQuotes()
-                .stream()
-                .filter(qt -> attributedTo == null || qt.attributedTo().equals(attributedTo))
-                .filter(qt -> subject == null || qt.subjects().contains(subject))
-                .collect(ImmutableList.toImmutableList());
+        var quotes = findQuotes(attributedTo, subject);
         var quoteFilters = ImmutableList.<String>builder()
                 .addAll(Optional.ofNullable(attributedTo).stream().toList())
                 .addAll(Optional.ofNullable(subject).stream().toList())
@@ -60,4 +65,18 @@ public class QuotesController {
         modelAndView.setViewName("quotes");
         return modelAndView;
     }
+
+    private ImmutableList<Quote> findQuotes(String attributedTo, String subject) {
+        // Let the service (and therefore the repository) do the lookup, and only filter the (small) result
+        if (attributedTo != null) {
+            return quoteService.findByAttributedTo(attributedTo)
+                    .stream()
+                    .filter(qt -> subject == null || qt.subjects().contains(subject))
+                    .collect(ImmutableList.toImmutableList());
+        } else if (subject != null) {
+            return quoteService.findBySubject(subject);
+        } else {
+            return quoteService.findAllQuotes();
+        }
+    }
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.quotes.web.rest;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Web REST controller for the Server-Sent Events stream of added and deleted quotes. See QuoteEventStreams.
+ *
+ * @author Chris de Vreeze
+ */
+@RestController
+@ConditionalOnProperty(name = "implementation.quoteEventStream", havingValue = "true", matchIfMissing = true)
+public class QuoteEventStreamController {
+
+    private final QuoteEventStreams quoteEventStreams;
+
+    public QuoteEventStreamController(QuoteEventStreams quoteEventStreams) {
+        this.quoteEventStreams = quoteEventStreams;
+    }
+
+    /**
+     * Subscribes to the stream of added and deleted quotes (committed after subscribing). If there are too many
+     * subscribers already, status 503 (Service Unavailable) is returned.
+     */
+    @GetMapping(value = "/quotes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter quoteEvents() {
+        return quoteEventStreams.subscribe()
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many subscribers"));
+    }
+}
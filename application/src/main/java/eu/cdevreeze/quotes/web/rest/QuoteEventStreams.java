@@ -0,0 +1,281 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.web.rest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.base.Preconditions;
+import eu.cdevreeze.quotes.internal.utils.ObjectMappers;
+import eu.cdevreeze.quotes.service.QuoteDataChangedEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-Sent Events streams of the quotes added and deleted through the QuoteService, one stream per subscriber.
+ * <p>
+ * Each committed QuoteDataChangedEvent is serialized once, as event "quotes-added" (a JSON array of quotes) and/or
+ * "quotes-deleted" (a JSON array of quote IDs), and put into the bounded buffer of each subscriber. The committing
+ * thread never writes to a subscriber connection itself. Instead, a send task per subscriber (on a virtual thread)
+ * empties the buffer, and only runs while there is something to send. Hence, an idle subscriber holds no thread, just
+ * an asynchronous request and a small buffer. If a slow subscriber's buffer is full, the new event is
+ * either dropped (policy DROP), which is reported to the subscriber as event "events-dropped" (with the number of
+ * dropped events) once it catches up, or the subscriber is disconnected (policy DISCONNECT). Either way, a subscriber
+ * that must not miss any change should catch up using the change feed (/quotes/changes.json).
+ * <p>
+ * Heartbeats (SSE comments) are sent to subscribers without pending events, so that idle connections are not
+ * closed by proxies, and so that disconnected subscribers are noticed and removed.
+ * <p>
+ * The send tasks run on virtual threads of their own, whether "spring.threads.virtual.enabled" is true or not.
+ * A send to a slow subscriber blocks until its connection accepts the data, and the overflow policy only limits its
+ * buffer, not such a blocked send. So the blocked send tasks, at most one per subscriber, must not take threads from
+ * a shared pool, where they would hold up the sends to all other subscribers, and other background work.
+ *
+ * @author Chris de Vreeze
+ */
+@Component
+@ConditionalOnProperty(name = "implementation.quoteEventStream", havingValue = "true", matchIfMissing = true)
+public class QuoteEventStreams {
+
+    public enum OverflowPolicy {DROP, DISCONNECT}
+
+    private static final Set<ResponseBodyEmitter.DataWithMediaType> CONNECTED =
+            SseEmitter.event().comment("connected").build();
+    private static final Set<ResponseBodyEmitter.DataWithMediaType> HEARTBEAT =
+            SseEmitter.event().comment("heartbeat").build();
+
+    private final Logger logger = LoggerFactory.getLogger(QuoteEventStreams.class);
+
+    private final ObjectWriter jsonWriter = ObjectMappers.getObjectMapper(false).writer();
+
+    private final Executor sendExecutor;
+    private final int maxSubscribers;
+    private final int bufferSize;
+    private final OverflowPolicy overflowPolicy;
+    private final Duration timeout;
+    private final ScheduledExecutorService heartbeatScheduler;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public QuoteEventStreams(
+            @Value("${implementation.quoteEventStream.maxSubscribers:10000}") int maxSubscribers,
+            @Value("${implementation.quoteEventStream.bufferSize:100}") int bufferSize,
+            @Value("${implementation.quoteEventStream.overflowPolicy:DROP}") OverflowPolicy overflowPolicy,
+            @Value("${implementation.quoteEventStream.heartbeatInterval:15s}") Duration heartbeatInterval,
+            @Value("${implementation.quoteEventStream.timeout:30m}") Duration timeout
+    ) {
+        this(
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("quote-event-stream-", 1).factory()),
+                maxSubscribers,
+                bufferSize,
+                overflowPolicy,
+                heartbeatInterval,
+                timeout);
+    }
+
+    /**
+     * Constructor taking the executor of the send tasks, which is shut down (if it is an ExecutorService) by
+     * method shutdown.
+     */
+    QuoteEventStreams(
+            Executor sendExecutor,
+            int maxSubscribers,
+            int bufferSize,
+            OverflowPolicy overflowPolicy,
+            Duration heartbeatInterval,
+            Duration timeout
+    ) {
+        Preconditions.checkArgument(maxSubscribers > 0);
+        Preconditions.checkArgument(bufferSize > 0);
+        Preconditions.checkArgument(heartbeatInterval.isPositive());
+        Preconditions.checkArgument(timeout.isPositive());
+
+        this.sendExecutor = sendExecutor;
+        this.maxSubscribers = maxSubscribers;
+        this.bufferSize = bufferSize;
+        this.overflowPolicy = overflowPolicy;
+        this.timeout = timeout;
+        this.heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("quote-event-stream-heartbeat").daemon().factory());
+        this.heartbeatScheduler.scheduleAtFixedRate(
+                this::sendHeartbeats, heartbeatInterval.toMillis(), heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns a new subscriber stream, or the empty Optional if the maximum number of subscribers has been reached.
+     * The stream ends after the timeout, after which the (EventSource) client is expected to reconnect.
+     */
+    public Optional<SseEmitter> subscribe() {
+        if (subscribers.size() >= maxSubscribers) {
+            return Optional.empty();
+        }
+        var subscriber = new Subscriber(new SseEmitter(timeout.toMillis()));
+        subscribers.add(subscriber);
+        // Sending something right away commits the response, so the client knows it is connected
+        subscriber.offer(CONNECTED);
+        return Optional.of(subscriber.emitter);
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onQuoteDataChanged(QuoteDataChangedEvent event) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        if (!event.addedQuotes().isEmpty()) {
+            publish(SseEmitter.event().name("quotes-added").data(toJson(event.addedQuotes()), MediaType.APPLICATION_JSON).build());
+        }
+        if (!event.deletedQuoteIds().isEmpty()) {
+            publish(SseEmitter.event().name("quotes-deleted").data(toJson(event.deletedQuoteIds()), MediaType.APPLICATION_JSON).build());
+        }
+    }
+
+    /**
+     * Sends a heartbeat to each subscriber that has no events pending. Invoked periodically.
+     */
+    void sendHeartbeats() {
+        subscribers.forEach(subscriber -> {
+            if (subscriber.buffer.isEmpty()) {
+                subscriber.offer(HEARTBEAT);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeatScheduler.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+        if (sendExecutor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void publish(Set<ResponseBodyEmitter.DataWithMediaType> event) {
+        subscribers.forEach(subscriber -> subscriber.offer(event));
+    }
+
+    private String toJson(Object value) {
+        try {
+            return jsonWriter.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final BlockingQueue<Set<ResponseBodyEmitter.DataWithMediaType>> buffer;
+        private final AtomicBoolean sending = new AtomicBoolean(false);
+        private final AtomicLong droppedEventCount = new AtomicLong(0);
+        private volatile boolean disconnecting = false;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+            this.buffer = new LinkedBlockingQueue<>(bufferSize);
+            emitter.onCompletion(() -> subscribers.remove(this));
+            emitter.onError(e -> subscribers.remove(this));
+            emitter.onTimeout(() -> {
+                subscribers.remove(this);
+                emitter.complete();
+            });
+        }
+
+        /**
+         * Buffers the event, applying the overflow policy if the buffer is full, and makes sure a send task runs.
+         * Never blocks.
+         */
+        void offer(Set<ResponseBodyEmitter.DataWithMediaType> event) {
+            if (disconnecting) {
+                return;
+            }
+            if (!buffer.offer(event)) {
+                switch (overflowPolicy) {
+                    case DROP -> droppedEventCount.incrementAndGet();
+                    case DISCONNECT -> {
+                        logger.info("Disconnecting slow quote event stream subscriber");
+                        // The send task completes the emitter, because that may block while a send is in progress
+                        disconnecting = true;
+                        subscribers.remove(this);
+                        buffer.clear();
+                    }
+                }
+            }
+            scheduleSending();
+        }
+
+        private void scheduleSending() {
+            if (sending.compareAndSet(false, true)) {
+                sendExecutor.execute(this::sendBufferedEvents);
+            }
+        }
+
+        private void sendBufferedEvents() {
+            try {
+                while (!disconnecting) {
+                    var event = buffer.poll();
+                    if (event != null) {
+                        emitter.send(event);
+                        continue;
+                    }
+                    var droppedCount = droppedEventCount.getAndSet(0);
+                    if (droppedCount == 0) {
+                        break;
+                    }
+                    emitter.send(SseEmitter.event().name("events-dropped").data(droppedCount));
+                }
+                if (disconnecting) {
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client has gone, or the emitter has already been completed
+                logger.debug("Quote event stream subscriber gone", e);
+                subscribers.remove(this);
+                disconnecting = true;
+                emitter.completeWithError(e);
+            } finally {
+                sending.set(false);
+            }
+            // An event may have been buffered after the buffer was found empty, but before the flag was reset
+            if (!disconnecting && (!buffer.isEmpty() || droppedEventCount.get() > 0)) {
+                scheduleSending();
+            }
+        }
+    }
+}
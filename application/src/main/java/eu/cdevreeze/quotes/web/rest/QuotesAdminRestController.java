@@ -17,11 +17,13 @@
 package eu.cdevreeze.quotes.web.rest;
 
 import eu.cdevreeze.quotes.sampledata.SampleData;
+import eu.cdevreeze.quotes.sampledata.SyntheticQuoteData;
 import eu.cdevreeze.quotes.service.QuoteService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 /**
@@ -33,6 +35,8 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/admin")
 public class QuotesAdminRestController {
 
+    private static final int SYNTHETIC_QUOTES_BATCH_SIZE = 1000;
+
     private final Logger logger = LoggerFactory.getLogger(QuotesAdminRestController.class);
 
     private final QuoteService quoteService;
@@ -43,11 +47,32 @@ public class QuotesAdminRestController {
 
     @PostMapping("/loadSampleQuotes")
     public void loadSampleQuotes() {
-        if (quoteService.findAllQuotes().isEmpty()) {
+        if (isDatabaseEmpty()) {
             logger.info(String.format("Loading %d sample quotes into the database", SampleData.allQuotes.size()));
-            SampleData.allQuotes.forEach(quoteService::addQuote);
+            quoteService.addQuotes(SampleData.allQuotes);
         } else {
             logger.warn("Not loading any sample quotes into the database, because it is already non-empty");
         }
     }
+
+    /**
+     * Loads the given number of generated quotes (see {@link SyntheticQuoteData}) into an empty database.
+     * The quotes are streamed into the database in batches, each in its own transaction.
+     */
+    @PostMapping("/loadSyntheticQuotes")
+    public void loadSyntheticQuotes(
+            @RequestParam long numberOfQuotes,
+            @RequestParam(defaultValue = "0") long seed
+    ) {
+        if (isDatabaseEmpty()) {
+            logger.info(String.format("Loading %d synthetic quotes (seed %d) into the database", numberOfQuotes, seed));
+            new SyntheticQuoteData(seed).addQuotes(numberOfQuotes, SYNTHETIC_QUOTES_BATCH_SIZE, quoteService::addQuotes);
+        } else {
+            logger.warn("Not loading any synthetic quotes into the database, because it is already non-empty");
+        }
+    }
+
+    private boolean isDatabaseEmpty() {
+        return quoteService.findQuotesAfter(0L, 1).isEmpty();
+    }
 }
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.quotes.web.rest;
+
+import com.google.common.base.Splitter;
+import eu.cdevreeze.quotes.service.QuoteDataChangedEvent;
+import eu.cdevreeze.quotes.service.QuoteDataVersion;
+import eu.cdevreeze.quotes.service.QuoteService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Holder of a snapshot of the full /quotes.json response body (compact JSON), together with a gzip-compressed
+ * variant, ready to be served as is. Hence, serving the full quote list costs hardly any
+ * CPU, as long as the snapshot is up-to-date.
+ * <p>
+ * A snapshot is up-to-date if its QuoteDataVersion is the current one. The snapshot is rebuilt in the background
+ * at startup, after each committed write through the QuoteService, and when it turns out to be outdated.
+ * Rebuild requests that arrive while a rebuild is pending are coalesced. While no up-to-date snapshot
+ * is available, the quotes are streamed as before.
+ * <p>
+ * Note that both variants are kept in memory, so the snapshot costs roughly the size of the JSON plus its gzipped
+ * size in heap. Each rebuild serializes and compresses all quotes, so with frequent writes the rebuilds cost CPU
+ * as well. Hence, this snapshot is only created if property "implementation.quotesJsonSnapshot" is "true".
+ * Deflate is not offered, because hardly any client accepts deflate but not gzip.
+ * <p>
+ * The rebuilds run on the application task executor of Spring Boot, so they run on virtual threads if
+ * "spring.threads.virtual.enabled" is true, like request handling and other asynchronous work.
+ *
+ * @author Chris de Vreeze
+ */
+@Component
+@ConditionalOnProperty(name = "implementation.quotesJsonSnapshot", havingValue = "true")
+public class QuotesJsonSnapshots {
+
+    /**
+     * The HTTP content codings of the snapshot variants. The identity coding has no Content-Encoding header.
+     */
+    public enum ContentCoding {
+
+        IDENTITY(Optional.empty()), GZIP(Optional.of("gzip"));
+
+        private final Optional<String> headerValue;
+
+        ContentCoding(Optional<String> headerValue) {
+            this.headerValue = headerValue;
+        }
+
+        public Optional<String> getHeaderValue() {
+            return headerValue;
+        }
+
+        /**
+         * Returns the ETag of this variant, given the ETag of the (uncompressed) data version.
+         * Strong ETags must differ per byte representation.
+         */
+        public String etag(String dataVersionEtag) {
+            return headerValue.map(v -> dataVersionEtag + "-" + v).orElse(dataVersionEtag);
+        }
+
+        /**
+         * Selects gzip if the given Accept-Encoding header value accepts it (explicitly or through "*", with a
+         * quality value greater than 0), and identity otherwise.
+         */
+        public static ContentCoding select(String acceptEncoding) {
+            if (acceptEncoding == null || acceptEncoding.isBlank()) {
+                return IDENTITY;
+            }
+            List<AcceptedCoding> acceptedCodings = Splitter.on(',').trimResults().omitEmptyStrings()
+                    .splitToStream(acceptEncoding)
+                    .map(AcceptedCoding::parse)
+                    .toList();
+            return quality(GZIP, acceptedCodings) > 0 ? GZIP : IDENTITY;
+        }
+
+        private static double quality(ContentCoding coding, List<AcceptedCoding> acceptedCodings) {
+            var name = coding.headerValue.orElseThrow();
+            return acceptedCodings.stream()
+                    .filter(acc -> acc.name().equals(name))
+                    .findFirst()
+                    .or(() -> acceptedCodings.stream().filter(acc -> acc.name().equals("*")).findFirst())
+                    .map(AcceptedCoding::quality)
+                    .orElse(0.0);
+        }
+    }
+
+    public record Snapshot(QuoteDataVersion dataVersion, byte[] json, byte[] gzippedJson) {
+
+        public byte[] content(ContentCoding contentCoding) {
+            return switch (contentCoding) {
+                case IDENTITY -> json;
+                case GZIP -> gzippedJson;
+            };
+        }
+    }
+
+    private record AcceptedCoding(String name, double quality) {
+
+        static AcceptedCoding parse(String value) {
+            var parts = Splitter.on(';').trimResults().splitToList(value);
+            var quality = parts.stream()
+                    .skip(1)
+                    .filter(param -> param.startsWith("q="))
+                    .map(param -> parseQuality(param.substring(2)))
+                    .findFirst()
+                    .orElse(1.0);
+            return new AcceptedCoding(parts.getFirst().toLowerCase(Locale.ROOT), quality);
+        }
+
+        private static double parseQuality(String value) {
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return 0.0;
+            }
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(QuotesJsonSnapshots.class);
+
+    private final QuoteService quoteService;
+    private final AtomicReference<Snapshot> currentSnapshot = new AtomicReference<>();
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    private final TaskExecutor rebuildExecutor;
+
+    public QuotesJsonSnapshots(
+            QuoteService quoteService,
+            @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) TaskExecutor rebuildExecutor
+    ) {
+        this.quoteService = quoteService;
+        this.rebuildExecutor = rebuildExecutor;
+    }
+
+    /**
+     * Returns the snapshot if it is up-to-date, and otherwise requests a rebuild and returns an empty Optional.
+     */
+    public Optional<Snapshot> getUpToDateSnapshot() {
+        var snapshot = currentSnapshot.get();
+        if (snapshot != null && snapshot.dataVersion().equals(quoteService.getDataVersion())) {
+            return Optional.of(snapshot);
+        }
+        requestRebuild();
+        return Optional.empty();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        requestRebuild();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onQuoteDataChanged(QuoteDataChangedEvent event) {
+        requestRebuild();
+    }
+
+    /**
+     * Builds and stores a new snapshot, in the calling thread.
+     */
+    Snapshot rebuild() {
+        // Any rebuild request from now on may concern data that this rebuild does not see
+        rebuildPending.set(false);
+        // Obtain the version before the data, so that the version is never newer than the data
+        var dataVersion = quoteService.getDataVersion();
+        var jsonOutput = new ByteArrayOutputStream();
+        try {
+            QuotesJsonWriting.writeAllQuotes(quoteService, QuotesJsonWriting.COMPACT_WRITER, jsonOutput);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var json = jsonOutput.toByteArray();
+        var snapshot = new Snapshot(dataVersion, json, gzip(json));
+        // Rebuilds may overlap (a new one may start while an older one is still running), so never go back in version
+        return currentSnapshot.accumulateAndGet(
+                snapshot,
+                (oldSnapshot, newSnapshot) -> (oldSnapshot == null ||
+                        newSnapshot.dataVersion().version() >= oldSnapshot.dataVersion().version()) ?
+                        newSnapshot :
+                        oldSnapshot);
+    }
+
+    private void requestRebuild() {
+        if (rebuildPending.compareAndSet(false, true)) {
+            rebuildExecutor.execute(() -> {
+                try {
+                    var snapshot = rebuild();
+                    logger.info(String.format(
+                            "Rebuilt quotes JSON snapshot (version %d, %d bytes, %d bytes gzipped)",
+                            snapshot.dataVersion().version(), snapshot.json().length, snapshot.gzippedJson().length));
+                } catch (RuntimeException e) {
+                    logger.warn("Could not rebuild quotes JSON snapshot", e);
+                }
+            });
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        var output = new ByteArrayOutputStream(bytes.length / 4);
+        try (var compressingStream = new GZIPOutputStream(output)) {
+            compressingStream.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+}
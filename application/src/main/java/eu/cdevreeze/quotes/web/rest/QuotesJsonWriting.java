@@ -0,0 +1,71 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.quotes.web.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import eu.cdevreeze.quotes.internal.utils.ObjectMappers;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.service.QuoteService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Writing of all quotes as one JSON array, one quote at a time (see QuoteService.forEachQuote), for the
+ * streamed /quotes.json response and its snapshots. The JSON is the same as the HttpMessageConverter produces,
+ * but flushing is left to the JsonGenerator and the buffers of the output stream.
+ * <p>
+ * If passing the quotes fails halfway, the JSON array is deliberately left unterminated (closing the
+ * JsonGenerator does not write the missing end tokens), so that clients cannot mistake a truncated response
+ * for a complete one.
+ *
+ * @author Chris de Vreeze
+ */
+final class QuotesJsonWriting {
+
+    static final ObjectWriter COMPACT_WRITER = createObjectWriter(false);
+    static final ObjectWriter PRETTY_WRITER = createObjectWriter(true);
+
+    private QuotesJsonWriting() {
+    }
+
+    static void writeAllQuotes(QuoteService quoteService, ObjectWriter objectWriter, OutputStream outputStream)
+            throws IOException {
+        try (var jsonGenerator = objectWriter.createGenerator(outputStream)) {
+            jsonGenerator.writeStartArray();
+            quoteService.forEachQuote(quote -> writeQuote(objectWriter, jsonGenerator, quote));
+            jsonGenerator.writeEndArray();
+        }
+    }
+
+    private static ObjectWriter createObjectWriter(boolean indentOutput) {
+        return ObjectMappers.getObjectMapper(indentOutput).writer()
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+    }
+
+    private static void writeQuote(ObjectWriter objectWriter, JsonGenerator jsonGenerator, Quote quote) {
+        try {
+            objectWriter.writeValue(jsonGenerator, quote);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -19,19 +19,40 @@ package eu.cdevreeze.quotes.web.rest;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.collect.ImmutableList;
 import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.model.QuoteChange;
 import eu.cdevreeze.quotes.model.QuoteData;
+import eu.cdevreeze.quotes.service.AsyncQuoteService;
 import eu.cdevreeze.quotes.service.QuoteService;
+import eu.cdevreeze.quotes.web.PrettyPrintNegotiatingHttpMessageConverter;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
 import org.springframework.http.RequestEntity;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
-import java.util.Random;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Quotes web REST controller.
  * <p>
+ * The quote lookups support conditional requests: the current QuoteDataVersion is sent as ETag (with a suffix
+ * for pretty-printed JSON, which is another byte representation), and if the client already has that version
+ * (If-None-Match), status 304 (Not Modified) is returned, without querying (let alone serializing) any quotes.
+ * No Last-Modified header is sent, because its precision of one second is too coarse (see QuoteDataVersion).
+ * <p>
+ * The quote lookups are asynchronous: the queries run on the executor of the AsyncQuoteService, and the
+ * request thread is released in the meantime. If the AsyncQuoteService is overloaded or the query takes
+ * too long, status 503 (Service Unavailable) is returned.
+ * <p>
  * Note that the RestController annotation is itself annotated with the Controller and ResponseBody
  * annotations. Hence, it is (indirectly) meta-annotated with the Component annotation (so it is a
  * candidate for component scanning). The ResponseBody annotation binds controller method return values
@@ -42,33 +63,188 @@ import java.util.Random;
 @RestController
 public class QuotesRestController {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+
+    private static final String RETRY_AFTER_SECONDS = "1";
+
     private final QuoteService quoteService;
+    private final AsyncQuoteService asyncQuoteService;
+    private final Optional<QuotesJsonSnapshots> quotesJsonSnapshots;
 
-    public QuotesRestController(QuoteService quoteService) {
+    public QuotesRestController(
+            QuoteService quoteService,
+            AsyncQuoteService asyncQuoteService,
+            Optional<QuotesJsonSnapshots> quotesJsonSnapshots
+    ) {
         this.quoteService = quoteService;
+        this.asyncQuoteService = asyncQuoteService;
+        this.quotesJsonSnapshots = quotesJsonSnapshots;
     }
 
+    /**
+     * Returns a random quote, optionally restricted to the given subject. If there is no such quote,
+     * status 404 (Not Found) is returned.
+     */
     @GetMapping(value = "/randomQuote.json", produces = MediaType.APPLICATION_JSON_VALUE)
-    public Quote randomQuote() {
-        var allQuotes = quoteService.findAllQuotes();
-        var random = new Random();
-        var randomIdx = random.nextInt(allQuotes.size());
-        return allQuotes.get(randomIdx);
+    public CompletableFuture<Quote> randomQuote(@RequestParam(required = false) String subject) {
+        var quote = (subject == null) ?
+                asyncQuoteService.findRandomQuote() :
+                asyncQuoteService.findRandomQuoteBySubject(subject);
+        return quote.thenApply(qt -> qt.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No quote found")));
+    }
+
+    /**
+     * Returns all quotes, ordered by ID, if neither request parameter "after" nor "limit" is given.
+     * <p>
+     * The quotes are streamed: they are written to the response one at a time while reading them from the
+     * database, instead of first collecting them all in memory (twice, as Quote list and as JSON). Hence, memory
+     * usage does not grow with the number of quotes, and the first bytes are sent early. The flip side is that
+     * a failure halfway can no longer be reported with an error status; the response is then just truncated.
+     * <p>
+     * Like all JSON responses, the JSON is compact, unless request parameter "pretty=true" is given.
+     * <p>
+     * If QuotesJsonSnapshots is enabled and has an up-to-date snapshot, the (compact) JSON is not serialized,
+     * but the precomputed bytes are written instead, compressed or not, depending on the Accept-Encoding
+     * request header.
+     */
+    @GetMapping(value = "/quotes.json", params = {"!after", "!limit"}, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> allQuotes(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            WebRequest webRequest
+    ) {
+        var prettyPrinting = PrettyPrintNegotiatingHttpMessageConverter.isPrettyPrintingRequested();
+        var snapshot = prettyPrinting ?
+                Optional.<QuotesJsonSnapshots.Snapshot>empty() :
+                quotesJsonSnapshots.flatMap(QuotesJsonSnapshots::getUpToDateSnapshot);
+
+        if (snapshot.isPresent()) {
+            return snapshotResponse(snapshot.get(), acceptEncoding, webRequest);
+        }
+        if (isNotModified(webRequest)) {
+            return null;
+        }
+        var objectWriter = prettyPrinting ? QuotesJsonWriting.PRETTY_WRITER : QuotesJsonWriting.COMPACT_WRITER;
+        StreamingResponseBody responseBody =
+                outputStream -> QuotesJsonWriting.writeAllQuotes(quoteService, objectWriter, outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .body(responseBody);
     }
 
+    /**
+     * Returns one page of quotes ordered by ID, if request parameter "after" and/or "limit" is given.
+     * If there may be more quotes, a "Link" response header (with relation type "next") contains the URL
+     * of the next page, using the last returned quote ID as cursor.
+     */
     @GetMapping(value = "/quotes.json", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ImmutableList<Quote> quotes() {
-        return quoteService.findAllQuotes();
+    public CompletableFuture<ResponseEntity<ImmutableList<Quote>>> quotes(
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit,
+            WebRequest webRequest
+    ) {
+        if (limit != null && limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Request parameter 'limit' must be positive");
+        }
+        if (isNotModified(webRequest)) {
+            return null;
+        }
+
+        var pageSize = Math.min(Optional.ofNullable(limit).orElse(DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+        // The current request is only known in the request thread, not when the query has completed
+        var currentRequestUri = ServletUriComponentsBuilder.fromCurrentRequest();
+
+        return asyncQuoteService.findQuotesAfter(Optional.ofNullable(after).orElse(0L), pageSize).thenApply(quotes -> {
+            if (quotes.size() < pageSize) {
+                return ResponseEntity.ok(quotes);
+            }
+            var nextPageUri = currentRequestUri
+                    .replaceQueryParam("after", quotes.getLast().id())
+                    .replaceQueryParam("limit", pageSize)
+                    .toUriString();
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.LINK, String.format("<%s>; rel=\"next\"", nextPageUri))
+                    .body(quotes);
+        });
+    }
+
+    /**
+     * Returns the quote changes (quotes added or deleted) with a sequence number greater than request parameter
+     * "since" (default 0, i.e. from the start), ordered by sequence number, at most request parameter "limit".
+     * An "added" change contains the quote itself, unless it has been deleted since.
+     * <p>
+     * This lets a consumer mirror the quotes incrementally: after an initial load, it only pulls the changes since
+     * the last sequence number it has seen, so the cost of keeping up depends on the write rate rather than on the
+     * number of quotes. If there may be more changes, a "Link" response header (with relation type "next") contains
+     * the URL of the next page. Since sequence numbers are assigned in commit order, no change is ever skipped.
+     */
+    @GetMapping(value = "/quotes/changes.json", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<ImmutableList<QuoteChange>>> quoteChanges(
+            @RequestParam(required = false) Long since,
+            @RequestParam(required = false) Integer limit,
+            WebRequest webRequest
+    ) {
+        if (limit != null && limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Request parameter 'limit' must be positive");
+        }
+        if (isNotModified(webRequest)) {
+            return null;
+        }
+
+        var pageSize = Math.min(Optional.ofNullable(limit).orElse(DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+        // The current request is only known in the request thread, not when the query has completed
+        var currentRequestUri = ServletUriComponentsBuilder.fromCurrentRequest();
+
+        return asyncQuoteService.findChangesAfter(Optional.ofNullable(since).orElse(0L), pageSize).thenApply(changes -> {
+            if (changes.size() < pageSize) {
+                return ResponseEntity.ok(changes);
+            }
+            var nextPageUri = currentRequestUri
+                    .replaceQueryParam("since", changes.getLast().seq())
+                    .replaceQueryParam("limit", pageSize)
+                    .toUriString();
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.LINK, String.format("<%s>; rel=\"next\"", nextPageUri))
+                    .body(changes);
+        });
+    }
+
+    /**
+     * Returns the quotes whose text matches request parameter "query" (full-text search), most relevant first.
+     * Request parameter "limit" is the maximum number of returned quotes.
+     */
+    @GetMapping(value = "/quotes/search.json", produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ImmutableList<Quote>> searchQuotes(
+            @RequestParam String query,
+            @RequestParam(required = false) Integer limit,
+            WebRequest webRequest
+    ) {
+        if (limit != null && limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Request parameter 'limit' must be positive");
+        }
+        if (isNotModified(webRequest)) {
+            return null;
+        }
+        var maxResults = Math.min(Optional.ofNullable(limit).orElse(DEFAULT_SEARCH_LIMIT), MAX_PAGE_SIZE);
+        return asyncQuoteService.searchQuotes(query, maxResults);
     }
 
     @GetMapping(value = "/quotesBySubject.json", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ImmutableList<Quote> quotesBySubject(@RequestParam String subject) {
-        return quoteService.findBySubject(subject);
+    public CompletableFuture<ImmutableList<Quote>> quotesBySubject(@RequestParam String subject, WebRequest webRequest) {
+        if (isNotModified(webRequest)) {
+            return null;
+        }
+        return asyncQuoteService.findBySubject(subject);
     }
 
     @GetMapping(value = "/quotesByAttributedTo.json", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ImmutableList<Quote> quotesByAttributedTo(@RequestParam String attributedTo) {
-        return quoteService.findByAttributedTo(attributedTo);
+    public CompletableFuture<ImmutableList<Quote>> quotesByAttributedTo(@RequestParam String attributedTo, WebRequest webRequest) {
+        if (isNotModified(webRequest)) {
+            return null;
+        }
+        return asyncQuoteService.findByAttributedTo(attributedTo);
     }
 
     // Below I considered using the PUT HTTP method, but that would require idempotency. Hence, the use of HTTP POST.
@@ -82,8 +258,62 @@ public class QuotesRestController {
         return new ResponseEntity<>(quote, HttpStatus.OK);
     }
 
+    @PostMapping(value = "/quotes", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ImmutableList<Quote>> addQuotes(RequestEntity<ImmutableList<QuoteData>> requestEntity) {
+        var quoteDataRecords = requestEntity.getBody();
+        if (quoteDataRecords == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing array of quotes in request body");
+        }
+        var quotes = quoteService.addQuotes(quoteDataRecords);
+        return new ResponseEntity<>(quotes, HttpStatus.OK);
+    }
+
     @DeleteMapping(value = "/quotes/{quoteId}")
     public void deleteQuote(@PathVariable long quoteId) {
         quoteService.deleteQuote(quoteId);
     }
+
+    /**
+     * Turns a rejected or timed out asynchronous query into status 503 (Service Unavailable), telling the client
+     * to retry later.
+     */
+    @ExceptionHandler({RejectedExecutionException.class, TimeoutException.class})
+    public ResponseEntity<ProblemDetail> queryUnavailable(Exception e) {
+        var reason = (e instanceof TimeoutException) ? "Query timed out" : "Too many pending queries";
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body(ProblemDetail.forStatusAndDetail(HttpStatus.SERVICE_UNAVAILABLE, reason));
+    }
+
+    /**
+     * Checks the If-None-Match request header against the ETag of the current QuoteDataVersion, which is also set
+     * as ETag response header. If true is returned, status 304 has been set, and the controller method must return
+     * null.
+     */
+    private boolean isNotModified(WebRequest webRequest) {
+        var etag = quoteService.getDataVersion().etag();
+        // Strong ETags must differ per byte representation
+        return webRequest.checkNotModified(
+                PrettyPrintNegotiatingHttpMessageConverter.isPrettyPrintingRequested() ? etag + "-pretty" : etag);
+    }
+
+    private ResponseEntity<StreamingResponseBody> snapshotResponse(
+            QuotesJsonSnapshots.Snapshot snapshot,
+            String acceptEncoding,
+            WebRequest webRequest
+    ) {
+        var contentCoding = QuotesJsonSnapshots.ContentCoding.select(acceptEncoding);
+        var dataVersion = snapshot.dataVersion();
+        if (webRequest.checkNotModified(contentCoding.etag(dataVersion.etag()))) {
+            return null;
+        }
+        var content = snapshot.content(contentCoding);
+        var responseBuilder = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .contentLength(content.length)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        contentCoding.getHeaderValue().ifPresent(coding -> responseBuilder.header(HttpHeaders.CONTENT_ENCODING, coding));
+        // The (shared) byte array is written to the response as is, without any serialization or compression
+        return responseBuilder.body(outputStream -> outputStream.write(content));
+    }
 }
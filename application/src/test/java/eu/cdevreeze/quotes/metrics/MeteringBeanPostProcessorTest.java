@@ -0,0 +1,160 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.metrics;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.repository.QuoteRepository;
+import eu.cdevreeze.quotes.repository.caching.CachingQuoteRepository;
+import eu.cdevreeze.quotes.repository.nonpersistent.NonPersistentQuoteRepository;
+import eu.cdevreeze.quotes.sampledata.SampleData;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test of MeteringBeanPostProcessor, instrumenting NonPersistentQuoteRepository and CachingQuoteRepository beans.
+ *
+ * @author Chris de Vreeze
+ */
+class MeteringBeanPostProcessorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private MeteringBeanPostProcessor beanPostProcessor;
+
+    @BeforeEach
+    void initialise() {
+        meterRegistry = new SimpleMeterRegistry();
+        var beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", meterRegistry);
+        beanPostProcessor = new MeteringBeanPostProcessor(beanFactory.getBeanProvider(MeterRegistry.class));
+        beanPostProcessor.setBeanFactory(beanFactory);
+    }
+
+    @Test
+    void shouldTimeCallsAndRecordResultSizesPerImplementationClass() {
+        var quoteRepository = instrument(new NonPersistentQuoteRepository());
+        var cachingQuoteRepository = instrument(new CachingQuoteRepository(quoteRepository));
+
+        Assertions.assertTrue(AopUtils.isAopProxy(quoteRepository));
+        Assertions.assertInstanceOf(NonPersistentQuoteRepository.class, quoteRepository);
+
+        var peaceQuotes = cachingQuoteRepository.findBySubject("peace");
+        cachingQuoteRepository.findBySubject("peace");
+        cachingQuoteRepository.findRandomQuoteBySubject("no such subject");
+
+        var cachingTimer = meterRegistry.get("quotes.repository.calls")
+                .tags("class", "CachingQuoteRepository", "method", "findBySubject")
+                .timer();
+        Assertions.assertEquals(2, cachingTimer.count());
+        Assertions.assertTrue(cachingTimer.totalTime(TimeUnit.NANOSECONDS) > 0);
+
+        var cachingResults = meterRegistry.get("quotes.repository.results")
+                .tags("class", "CachingQuoteRepository", "method", "findBySubject")
+                .summary();
+        Assertions.assertEquals(2, cachingResults.count());
+        Assertions.assertEquals(2.0 * peaceQuotes.size(), cachingResults.totalAmount());
+
+        var noRandomQuote = meterRegistry.get("quotes.repository.results")
+                .tags("class", "CachingQuoteRepository", "method", "findRandomQuoteBySubject")
+                .summary();
+        Assertions.assertEquals(1, noRandomQuote.count());
+        Assertions.assertEquals(0.0, noRandomQuote.totalAmount());
+
+        // The cache has been loaded once from the decorated repository, which is metered under its own class
+        var underlyingTimer = meterRegistry.get("quotes.repository.calls")
+                .tags("class", "NonPersistentQuoteRepository", "method", "findAllQuotes")
+                .timer();
+        Assertions.assertEquals(1, underlyingTimer.count());
+        Assertions.assertEquals(
+                SampleData.allQuotes.size(),
+                meterRegistry.get("quotes.repository.results")
+                        .tags("class", "NonPersistentQuoteRepository", "method", "findAllQuotes")
+                        .summary()
+                        .totalAmount());
+    }
+
+    @Test
+    void shouldCountQuotesPassedToConsumer() {
+        var quoteRepository = instrument(new NonPersistentQuoteRepository());
+        var consumedCount = new AtomicInteger();
+
+        quoteRepository.forEachQuote(quote -> consumedCount.incrementAndGet());
+
+        Assertions.assertEquals(SampleData.allQuotes.size(), consumedCount.get());
+        var results = meterRegistry.get("quotes.repository.results")
+                .tags("class", "NonPersistentQuoteRepository", "method", "forEachQuote")
+                .summary();
+        Assertions.assertEquals(1, results.count());
+        Assertions.assertEquals(SampleData.allQuotes.size(), results.totalAmount());
+    }
+
+    @Test
+    void shouldCountErrors() {
+        var quoteRepository = instrument(new FailingQuoteRepository());
+
+        Assertions.assertThrows(QueryTimeoutException.class, () -> quoteRepository.findBySubject("peace"));
+        Assertions.assertThrows(QueryTimeoutException.class, () -> quoteRepository.findBySubject("peace"));
+
+        Assertions.assertEquals(
+                2,
+                meterRegistry.get("quotes.repository.errors")
+                        .tags("class", "FailingQuoteRepository", "method", "findBySubject", "exception", "QueryTimeoutException")
+                        .counter()
+                        .count());
+        Assertions.assertEquals(
+                2,
+                meterRegistry.get("quotes.repository.calls")
+                        .tags("class", "FailingQuoteRepository", "method", "findBySubject")
+                        .timer()
+                        .count());
+        Assertions.assertEquals(
+                0,
+                meterRegistry.get("quotes.repository.results")
+                        .tags("class", "FailingQuoteRepository", "method", "findBySubject")
+                        .summary()
+                        .count());
+    }
+
+    @Test
+    void shouldNotInstrumentOtherBeans() {
+        var bean = new Object();
+
+        Assertions.assertSame(bean, beanPostProcessor.postProcessAfterInitialization(bean, "someBean"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends QuoteRepository> T instrument(T quoteRepository) {
+        return (T) beanPostProcessor.postProcessAfterInitialization(quoteRepository, "quoteRepository");
+    }
+
+    public static class FailingQuoteRepository extends NonPersistentQuoteRepository {
+
+        @Override
+        public ImmutableList<Quote> findBySubject(String subject) {
+            throw new QueryTimeoutException("Timeout");
+        }
+    }
+}
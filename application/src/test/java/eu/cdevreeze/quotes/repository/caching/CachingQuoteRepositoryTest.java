@@ -0,0 +1,135 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.repository.caching;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.model.QuoteData;
+import eu.cdevreeze.quotes.repository.nonpersistent.NonPersistentQuoteRepository;
+import eu.cdevreeze.quotes.sampledata.SampleData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test of CachingQuoteRepository, decorating a NonPersistentQuoteRepository.
+ *
+ * @author Chris de Vreeze
+ */
+class CachingQuoteRepositoryTest {
+
+    private CountingQuoteRepository underlyingQuoteRepository;
+    private CachingQuoteRepository cachingQuoteRepository;
+
+    @BeforeEach
+    void initialise() {
+        underlyingQuoteRepository = new CountingQuoteRepository();
+        cachingQuoteRepository = new CachingQuoteRepository(underlyingQuoteRepository);
+    }
+
+    @Test
+    void shouldLoadQuotesOnlyOnce() {
+        var expectedPeaceQuotes = underlyingQuoteRepository.findBySubject("peace");
+        var expectedWimHofQuotes = underlyingQuoteRepository.findByAttributedTo("Wim Hof");
+        var expectedPage = underlyingQuoteRepository.findQuotesAfter(10, 5);
+        underlyingQuoteRepository.findAllQuotesCount.set(0);
+
+        var quotes = cachingQuoteRepository.findAllQuotes();
+
+        Assertions.assertEquals(SampleData.allQuotes.size(), quotes.size());
+        Assertions.assertEquals(expectedPeaceQuotes, cachingQuoteRepository.findBySubject("peace"));
+        Assertions.assertEquals(expectedWimHofQuotes, cachingQuoteRepository.findByAttributedTo("Wim Hof"));
+        Assertions.assertEquals(expectedPage, cachingQuoteRepository.findQuotesAfter(10, 5));
+        Assertions.assertEquals(quotes, cachingQuoteRepository.findAllQuotes());
+
+        Assertions.assertEquals(1, underlyingQuoteRepository.findAllQuotesCount.get());
+    }
+
+    @Test
+    void shouldUpdateCacheAfterWrites() {
+        var numberOfQuotes = cachingQuoteRepository.findAllQuotes().size();
+
+        var quote = cachingQuoteRepository.addQuote(
+                new QuoteData("The planet is fine. The people are fucked.", "George Carlin", ImmutableList.of("comedy")));
+
+        Assertions.assertEquals(numberOfQuotes + 1, cachingQuoteRepository.findAllQuotes().size());
+        Assertions.assertEquals(ImmutableList.of(quote), cachingQuoteRepository.findByAttributedTo("George Carlin"));
+
+        cachingQuoteRepository.deleteQuote(quote.id());
+
+        Assertions.assertEquals(numberOfQuotes, cachingQuoteRepository.findAllQuotes().size());
+        Assertions.assertTrue(cachingQuoteRepository.findByAttributedTo("George Carlin").isEmpty());
+        Assertions.assertEquals(underlyingQuoteRepository.findAllQuotes(), cachingQuoteRepository.findAllQuotes());
+
+        // The writes have been applied to the cached quotes, instead of reloading them
+        Assertions.assertEquals(2, underlyingQuoteRepository.findAllQuotesCount.get());
+    }
+
+    @Test
+    void shouldApplySeriesOfWritesAtNextRead() {
+        var numberOfQuotes = cachingQuoteRepository.findAllQuotes().size();
+
+        var addedQuotes = cachingQuoteRepository.addQuotes(ImmutableList.of(
+                new QuoteData("First batched quote", "Batch author", ImmutableList.of("batch")),
+                new QuoteData("Second batched quote", "Batch author", ImmutableList.of("batch"))));
+        var quote = cachingQuoteRepository.addQuote(
+                new QuoteData("Short-lived quote", "Batch author", ImmutableList.of("batch")));
+        cachingQuoteRepository.deleteQuote(quote.id());
+        cachingQuoteRepository.deleteQuote(1L);
+
+        Assertions.assertEquals(numberOfQuotes + 1, cachingQuoteRepository.findAllQuotes().size());
+        Assertions.assertEquals(addedQuotes, cachingQuoteRepository.findBySubject("batch"));
+        Assertions.assertEquals(addedQuotes, cachingQuoteRepository.findByAttributedTo("Batch author"));
+        Assertions.assertEquals(underlyingQuoteRepository.findAllQuotes(), cachingQuoteRepository.findAllQuotes());
+        Assertions.assertEquals(2, underlyingQuoteRepository.findAllQuotesCount.get());
+    }
+
+    @Test
+    void shouldUpdateCacheOnlyAfterCommit() {
+        var numberOfQuotes = cachingQuoteRepository.findAllQuotes().size();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cachingQuoteRepository.addQuote(
+                    new QuoteData("The planet is fine. The people are fucked.", "George Carlin", ImmutableList.of("comedy")));
+
+            Assertions.assertEquals(numberOfQuotes, cachingQuoteRepository.findAllQuotes().size());
+
+            TransactionSynchronizationUtils.triggerAfterCommit();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        Assertions.assertEquals(numberOfQuotes + 1, cachingQuoteRepository.findAllQuotes().size());
+        Assertions.assertEquals(1, cachingQuoteRepository.findBySubject("comedy").size());
+    }
+
+    private static class CountingQuoteRepository extends NonPersistentQuoteRepository {
+
+        private final AtomicInteger findAllQuotesCount = new AtomicInteger();
+
+        @Override
+        public ImmutableList<Quote> findAllQuotes() {
+            findAllQuotesCount.incrementAndGet();
+            return super.findAllQuotes();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.repository.index;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.model.QuoteData;
+import eu.cdevreeze.quotes.sampledata.SampleData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+/**
+ * Test of QuoteIndex, comparing its lookups with linear scans over the quotes.
+ *
+ * @author Chris de Vreeze
+ */
+class QuoteIndexTest {
+
+    private final ImmutableList<Quote> sampleQuotes = IntStream.range(0, SampleData.allQuotes.size())
+            .mapToObj(i -> toQuote(SampleData.allQuotes.size() - i, SampleData.allQuotes.get(i)))
+            .collect(ImmutableList.toImmutableList());
+
+    @Test
+    void shouldFindQuotesInIdOrder() {
+        var quoteIndex = QuoteIndex.of(sampleQuotes);
+
+        Assertions.assertEquals(sampleQuotes.size(), quoteIndex.size());
+        Assertions.assertEquals(sampleQuotes.reverse(), quoteIndex.findAllQuotes());
+        Assertions.assertEquals(sampleQuotes.reverse().subList(10, 15), quoteIndex.findQuotesAfter(10, 5));
+        Assertions.assertEquals(sampleQuotes.get(0), quoteIndex.findById(sampleQuotes.size()).orElseThrow());
+        Assertions.assertTrue(quoteIndex.findById(sampleQuotes.size() + 1).isEmpty());
+    }
+
+    @Test
+    void shouldFindQuotesBySubjectAndAttributedTo() {
+        var quoteIndex = QuoteIndex.of(sampleQuotes);
+
+        for (Quote quote : sampleQuotes) {
+            for (String subject : quote.subjects()) {
+                Assertions.assertEquals(
+                        quoteIndex.findAllQuotes().stream()
+                                .filter(qt -> qt.subjects().contains(subject))
+                                .collect(ImmutableList.toImmutableList()),
+                        quoteIndex.findBySubject(subject));
+            }
+            Assertions.assertEquals(
+                    quoteIndex.findAllQuotes().stream()
+                            .filter(qt -> qt.attributedTo().equals(quote.attributedTo()))
+                            .collect(ImmutableList.toImmutableList()),
+                    quoteIndex.findByAttributedTo(quote.attributedTo()));
+        }
+
+        Assertions.assertTrue(quoteIndex.findBySubject("unknown subject").isEmpty());
+        Assertions.assertTrue(quoteIndex.findByAttributedTo("Unknown").isEmpty());
+    }
+
+    @Test
+    void shouldSearchQuotesByRelevance() {
+        var quoteIndex = QuoteIndex.of(ImmutableList.of(
+                new Quote(1, "Freedom is not free.", "A", ImmutableList.of()),
+                new Quote(2, "The price of freedom is eternal vigilance, and freedom is worth it.", "B", ImmutableList.of()),
+                new Quote(3, "War is peace. Freedom is slavery. Ignorance is strength, and war is war.", "C", ImmutableList.of()),
+                new Quote(4, "Nothing to see here.", "D", ImmutableList.of())
+        ));
+
+        // The short quote comes first, then the one mentioning freedom twice
+        Assertions.assertEquals(
+                ImmutableList.of(1L, 2L, 3L),
+                quoteIndex.searchQuotes("FREEDOM", 10).stream().map(Quote::id).toList());
+        Assertions.assertEquals(
+                ImmutableList.of(1L, 2L),
+                quoteIndex.searchQuotes("freedom", 2).stream().map(Quote::id).toList());
+        // The rare term "war" outweighs the common term "freedom"
+        Assertions.assertEquals(3L, quoteIndex.searchQuotes("freedom, war!", 10).getFirst().id());
+        Assertions.assertTrue(quoteIndex.searchQuotes("unknown words", 10).isEmpty());
+
+        var updatedQuoteIndex = quoteIndex.withoutQuote(2).withQuote(new Quote(1, "Nothing is free.", "A", ImmutableList.of()));
+
+        Assertions.assertEquals(
+                ImmutableList.of(3L),
+                updatedQuoteIndex.searchQuotes("freedom", 10).stream().map(Quote::id).toList());
+        Assertions.assertEquals(
+                ImmutableList.of(1L, 4L),
+                updatedQuoteIndex.searchQuotes("nothing", 10).stream().map(Quote::id).toList());
+    }
+
+    @Test
+    void shouldUpdateIndexesIncrementally() {
+        var quoteIndex = QuoteIndex.of(sampleQuotes);
+        var numberOfPeaceQuotes = quoteIndex.findBySubject("peace").size();
+        var newQuote = new Quote(1000, "Hello, world", "Wim Hof", ImmutableList.of("peace", "greeting"));
+
+        var updatedQuoteIndex = quoteIndex.withQuote(newQuote);
+
+        Assertions.assertEquals(sampleQuotes.size() + 1, updatedQuoteIndex.size());
+        Assertions.assertEquals(numberOfPeaceQuotes + 1, updatedQuoteIndex.findBySubject("peace").size());
+        Assertions.assertEquals(ImmutableList.of(newQuote), updatedQuoteIndex.findBySubject("greeting"));
+        Assertions.assertEquals(newQuote, updatedQuoteIndex.findByAttributedTo("Wim Hof").getLast());
+
+        // The original index is not affected
+        Assertions.assertEquals(sampleQuotes.size(), quoteIndex.size());
+        Assertions.assertTrue(quoteIndex.findBySubject("greeting").isEmpty());
+
+        var replacingQuote = new Quote(1000, "Hello again", "Someone else", ImmutableList.of("greeting"));
+        var replacedQuoteIndex = updatedQuoteIndex.withQuote(replacingQuote);
+
+        Assertions.assertEquals(updatedQuoteIndex.size(), replacedQuoteIndex.size());
+        Assertions.assertEquals(numberOfPeaceQuotes, replacedQuoteIndex.findBySubject("peace").size());
+        Assertions.assertEquals(ImmutableList.of(replacingQuote), replacedQuoteIndex.findByAttributedTo("Someone else"));
+        Assertions.assertEquals(quoteIndex.findByAttributedTo("Wim Hof"), replacedQuoteIndex.findByAttributedTo("Wim Hof"));
+
+        var restoredQuoteIndex = replacedQuoteIndex.withoutQuote(1000);
+
+        Assertions.assertEquals(quoteIndex.findAllQuotes(), restoredQuoteIndex.findAllQuotes());
+        Assertions.assertTrue(restoredQuoteIndex.findBySubject("greeting").isEmpty());
+        Assertions.assertTrue(restoredQuoteIndex.findByAttributedTo("Someone else").isEmpty());
+        Assertions.assertSame(restoredQuoteIndex, restoredQuoteIndex.withoutQuote(1000));
+    }
+
+    @Test
+    void shouldApplyRemovalsAndAdditionsInOneUpdate() {
+        var quoteIndex = QuoteIndex.of(sampleQuotes);
+        var removedQuote = quoteIndex.findAllQuotes().getFirst();
+        var newQuotes = ImmutableList.of(
+                new Quote(1000, "Hello, world", "Wim Hof", ImmutableList.of("greeting")),
+                new Quote(1001, "Hello again", "Wim Hof", ImmutableList.of("greeting")));
+
+        var updatedQuoteIndex = quoteIndex.withChanges(newQuotes, ImmutableSet.of(removedQuote.id(), 1000L));
+
+        Assertions.assertEquals(
+                quoteIndex.withoutQuote(removedQuote.id()).withQuotes(newQuotes).findAllQuotes(),
+                updatedQuoteIndex.findAllQuotes());
+        Assertions.assertEquals(newQuotes, updatedQuoteIndex.findBySubject("greeting"));
+        Assertions.assertTrue(updatedQuoteIndex.findById(removedQuote.id()).isEmpty());
+    }
+
+    private static Quote toQuote(long id, QuoteData quoteData) {
+        return new Quote(id, quoteData.text(), quoteData.attributedTo(), quoteData.subjects());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.quotes.repository.jdbc;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.model.QuoteChange;
+import eu.cdevreeze.quotes.model.QuoteData;
+import org.junit.jupiter.api.*;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Test of JdbcQuoteChangeRepository against an embedded H2 database in MySQL mode.
+ *
+ * @author Chris de Vreeze
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class JdbcQuoteChangeRepositoryTest {
+
+    private EmbeddedDatabase database;
+    private JdbcQuoteRepository quoteRepository;
+    private JdbcQuoteChangeRepository quoteChangeRepository;
+
+    @BeforeAll
+    void initialise() throws IOException {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("quotechanges;MODE=MySQL;DATABASE_TO_LOWER=TRUE")
+                .build();
+        // H2 has no FULLTEXT indexes, so that index is left out
+        var createTablesScript = Files.readAllLines(Path.of("create_tables.sql")).stream()
+                .filter(line -> !line.startsWith("create fulltext index"))
+                .collect(Collectors.joining(System.lineSeparator()));
+        new ResourceDatabasePopulator(new ByteArrayResource(createTablesScript.getBytes(StandardCharsets.UTF_8)))
+                .execute(database);
+        quoteRepository = new JdbcQuoteRepository(database);
+        quoteChangeRepository = new JdbcQuoteChangeRepository(database);
+    }
+
+    @AfterAll
+    void shutdown() {
+        database.shutdown();
+    }
+
+    @Test
+    void shouldReturnChangesInSequenceWithCurrentQuotes() {
+        var lastSeq = quoteChangeRepository.findChangesAfter(0L, Integer.MAX_VALUE).stream()
+                .mapToLong(QuoteChange::seq)
+                .max()
+                .orElse(0L);
+
+        var quotes = quoteRepository.addQuotes(ImmutableList.of(
+                new QuoteData("Changed quote 1", "Change author", ImmutableList.of("change", "first")),
+                new QuoteData("Changed quote 2", "Change author", ImmutableList.of()),
+                new QuoteData("Changed quote 3", "Change author", ImmutableList.of("change"))));
+        var quoteIds = quotes.stream().map(Quote::id).collect(ImmutableList.toImmutableList());
+        quoteChangeRepository.addChanges(QuoteChange.Type.ADDED, quoteIds);
+        quoteRepository.deleteQuote(quoteIds.get(1));
+        quoteChangeRepository.addChanges(QuoteChange.Type.DELETED, ImmutableList.of(quoteIds.get(1)));
+
+        var firstPage = quoteChangeRepository.findChangesAfter(lastSeq, 2);
+
+        Assertions.assertEquals(
+                ImmutableList.of(
+                        new QuoteChange(lastSeq + 1, QuoteChange.Type.ADDED, quoteIds.get(0), Optional.of(quotes.get(0))),
+                        // Deleted since, so without quote
+                        new QuoteChange(lastSeq + 2, QuoteChange.Type.ADDED, quoteIds.get(1), Optional.empty())),
+                normalize(firstPage));
+
+        var secondPage = quoteChangeRepository.findChangesAfter(firstPage.getLast().seq(), 2);
+
+        Assertions.assertEquals(
+                ImmutableList.of(
+                        new QuoteChange(lastSeq + 3, QuoteChange.Type.ADDED, quoteIds.get(2), Optional.of(quotes.get(2))),
+                        new QuoteChange(lastSeq + 4, QuoteChange.Type.DELETED, quoteIds.get(1), Optional.empty())),
+                normalize(secondPage));
+
+        Assertions.assertTrue(quoteChangeRepository.findChangesAfter(secondPage.getLast().seq(), 2).isEmpty());
+    }
+
+    @Test
+    void shouldNotUseSequenceNumbersForNoChanges() {
+        quoteChangeRepository.addChanges(QuoteChange.Type.ADDED, ImmutableList.of(1000L));
+        var seq = quoteChangeRepository.findChangesAfter(0L, Integer.MAX_VALUE).getLast().seq();
+
+        quoteChangeRepository.addChanges(QuoteChange.Type.ADDED, ImmutableList.of());
+        quoteChangeRepository.addChanges(QuoteChange.Type.DELETED, ImmutableList.of(1000L));
+
+        Assertions.assertEquals(
+                ImmutableList.of(new QuoteChange(seq + 1, QuoteChange.Type.DELETED, 1000L, Optional.empty())),
+                quoteChangeRepository.findChangesAfter(seq, 10));
+    }
+
+    private ImmutableList<QuoteChange> normalize(ImmutableList<QuoteChange> changes) {
+        // The order of the subjects of a quote is not prescribed
+        return changes.stream()
+                .map(change -> new QuoteChange(
+                        change.seq(),
+                        change.type(),
+                        change.quoteId(),
+                        change.quote().map(qt -> new Quote(
+                                qt.id(),
+                                qt.text(),
+                                qt.attributedTo(),
+                                qt.subjects().stream().sorted().collect(ImmutableList.toImmutableList())))))
+                .collect(ImmutableList.toImmutableList());
+    }
+}
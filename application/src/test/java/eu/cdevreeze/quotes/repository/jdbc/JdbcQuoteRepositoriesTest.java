@@ -0,0 +1,307 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.repository.jdbc;
+
+import com.google.common.collect.Comparators;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.model.QuoteData;
+import eu.cdevreeze.quotes.repository.QuoteRepository;
+import eu.cdevreeze.quotes.sampledata.SampleData;
+import org.junit.jupiter.api.*;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Test of the JDBC-based QuoteRepository implementations against an embedded H2 database in MySQL mode,
+ * checking that the JSON-based implementations return the same results as JdbcQuoteRepository.
+ *
+ * @author Chris de Vreeze
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class JdbcQuoteRepositoriesTest {
+
+    private EmbeddedDatabase database;
+    private JdbcQuoteRepository jdbcQuoteRepository;
+    private List<QuoteRepository> otherQuoteRepositories;
+
+    @BeforeAll
+    void initialise() throws IOException {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("quotes;MODE=MySQL;DATABASE_TO_LOWER=TRUE")
+                .build();
+        // H2 has no FULLTEXT indexes (nor "match ... against"), so that index is left out, and searchQuotes is not tested here
+        var createTablesScript = Files.readAllLines(Path.of("create_tables.sql")).stream()
+                .filter(line -> !line.startsWith("create fulltext index"))
+                .collect(Collectors.joining(System.lineSeparator()));
+        new ResourceDatabasePopulator(new ByteArrayResource(createTablesScript.getBytes(StandardCharsets.UTF_8)))
+                .execute(database);
+        jdbcQuoteRepository = new JdbcQuoteRepository(database);
+        otherQuoteRepositories = List.of(
+                new JdbcQuoteRepositoryUsingJson(database),
+                new JdbcQuoteRepositoryUsingOnlyJson(database)
+        );
+
+        SampleData.allQuotes.forEach(jdbcQuoteRepository::addQuote);
+    }
+
+    @AfterAll
+    void shutdown() {
+        database.shutdown();
+    }
+
+    @Test
+    void shouldFindAllQuotes() {
+        var expectedQuotes = normalize(jdbcQuoteRepository.findAllQuotes());
+
+        Assertions.assertEquals(SampleData.allQuotes.size(), expectedQuotes.size());
+
+        for (QuoteRepository quoteRepository : otherQuoteRepositories) {
+            Assertions.assertEquals(expectedQuotes, normalize(quoteRepository.findAllQuotes()));
+        }
+    }
+
+    @Test
+    void shouldStreamAllQuotesOrderedById() {
+        var expectedQuotes = normalize(jdbcQuoteRepository.findAllQuotes());
+
+        for (QuoteRepository quoteRepository : ImmutableList.<QuoteRepository>builder()
+                .add(jdbcQuoteRepository)
+                .addAll(otherQuoteRepositories)
+                .build()) {
+            List<Quote> streamedQuotes = new ArrayList<>();
+            quoteRepository.forEachQuote(streamedQuotes::add);
+
+            Assertions.assertEquals(expectedQuotes, normalize(ImmutableList.copyOf(streamedQuotes)));
+            Assertions.assertTrue(Comparators.isInStrictOrder(streamedQuotes, Comparator.comparingLong(Quote::id)));
+        }
+    }
+
+    @Test
+    void shouldFindQuotesBySubject() {
+        var subjects = SampleData.allQuotes.stream()
+                .flatMap(qt -> qt.subjects().stream())
+                .collect(ImmutableSet.toImmutableSet());
+
+        for (String subject : subjects) {
+            var expectedQuotes = normalize(jdbcQuoteRepository.findBySubject(subject));
+
+            Assertions.assertFalse(expectedQuotes.isEmpty());
+            Assertions.assertTrue(expectedQuotes.stream().allMatch(qt -> qt.subjects().contains(subject)));
+            Assertions.assertEquals(
+                    SampleData.allQuotes.stream().filter(qt -> qt.subjects().contains(subject)).count(),
+                    expectedQuotes.size());
+
+            for (QuoteRepository quoteRepository : otherQuoteRepositories) {
+                Assertions.assertEquals(expectedQuotes, normalize(quoteRepository.findBySubject(subject)));
+            }
+        }
+
+        // Quotes with more than one subject must keep all their subjects
+        var expectedPeaceQuotes = normalize(jdbcQuoteRepository.findBySubject("peace"));
+        Assertions.assertTrue(expectedPeaceQuotes.stream().allMatch(qt -> qt.subjects().contains("liberty")));
+    }
+
+    @Test
+    void shouldFindQuotesByAttributedTo() {
+        var attributedToValues = SampleData.allQuotes.stream()
+                .map(QuoteData::attributedTo)
+                .collect(ImmutableSet.toImmutableSet());
+
+        for (String attributedTo : attributedToValues) {
+            var expectedQuotes = normalize(jdbcQuoteRepository.findByAttributedTo(attributedTo));
+
+            Assertions.assertEquals(
+                    SampleData.allQuotes.stream().filter(qt -> qt.attributedTo().equals(attributedTo)).count(),
+                    expectedQuotes.size());
+
+            for (QuoteRepository quoteRepository : otherQuoteRepositories) {
+                Assertions.assertEquals(expectedQuotes, normalize(quoteRepository.findByAttributedTo(attributedTo)));
+            }
+        }
+    }
+
+    @Test
+    void shouldFindPagesOfQuotes() {
+        var allQuoteIds = jdbcQuoteRepository.findAllQuotes().stream().map(Quote::id).sorted().toList();
+        var afterId = allQuoteIds.get(9);
+        var expectedQuotes = normalize(jdbcQuoteRepository.findQuotesAfter(afterId, 5));
+
+        Assertions.assertEquals(allQuoteIds.subList(10, 15), expectedQuotes.stream().map(Quote::id).toList());
+
+        for (QuoteRepository quoteRepository : otherQuoteRepositories) {
+            var quotes = quoteRepository.findQuotesAfter(afterId, 5);
+
+            Assertions.assertEquals(expectedQuotes, normalize(quotes));
+            Assertions.assertEquals(allQuoteIds.subList(10, 15), quotes.stream().map(Quote::id).toList());
+        }
+    }
+
+    @Test
+    void shouldFindRandomQuotes() {
+        var allQuotes = normalize(jdbcQuoteRepository.findAllQuotes());
+
+        for (QuoteRepository quoteRepository : ImmutableList.<QuoteRepository>builder()
+                .add(jdbcQuoteRepository).addAll(otherQuoteRepositories).build()) {
+            for (int i = 0; i < 20; i++) {
+                var quote = quoteRepository.findRandomQuote().orElseThrow();
+                Assertions.assertTrue(allQuotes.contains(normalize(ImmutableList.of(quote)).getFirst()));
+
+                var peaceQuote = quoteRepository.findRandomQuoteBySubject("peace").orElseThrow();
+                Assertions.assertTrue(peaceQuote.subjects().contains("peace"));
+                Assertions.assertTrue(allQuotes.contains(normalize(ImmutableList.of(peaceQuote)).getFirst()));
+            }
+
+            Assertions.assertTrue(quoteRepository.findRandomQuoteBySubject("non-existing subject").isEmpty());
+        }
+    }
+
+    @Test
+    void shouldAddQuotesInBulk() {
+        var quoteDataRecords = ImmutableList.of(
+                new QuoteData("Bulk quote 1", "Bulk author", ImmutableList.of("bulk", "first")),
+                new QuoteData("Bulk quote 2", "Bulk author", ImmutableList.of()),
+                new QuoteData("Bulk quote 3", "Bulk author", ImmutableList.of("bulk"))
+        );
+
+        for (QuoteRepository quoteRepository : ImmutableList.<QuoteRepository>builder()
+                .add(jdbcQuoteRepository).addAll(otherQuoteRepositories).build()) {
+            var quotes = quoteRepository.addQuotes(quoteDataRecords);
+
+            Assertions.assertEquals(
+                    quoteDataRecords,
+                    quotes.stream()
+                            .map(qt -> new QuoteData(qt.text(), qt.attributedTo(), qt.subjects()))
+                            .collect(ImmutableList.toImmutableList()));
+            Assertions.assertEquals(3, quotes.stream().map(Quote::id).distinct().count());
+            Assertions.assertEquals(
+                    normalize(quotes.stream()
+                            .filter(qt -> qt.subjects().contains("bulk"))
+                            .collect(ImmutableList.toImmutableList())),
+                    normalize(jdbcQuoteRepository.findBySubject("bulk")));
+            Assertions.assertEquals(normalize(quotes), normalize(jdbcQuoteRepository.findByAttributedTo("Bulk author")));
+
+            quotes.forEach(qt -> Assertions.assertTrue(quoteRepository.deleteQuote(qt.id())));
+            Assertions.assertFalse(quoteRepository.deleteQuote(quotes.get(0).id()));
+        }
+
+        Assertions.assertEquals(SampleData.allQuotes.size(), jdbcQuoteRepository.findAllQuotes().size());
+    }
+
+    @Test
+    void shouldAddQuoteInConstantNumberOfStatements() {
+        var statementCountingDataSource = new StatementCountingDataSource(database);
+        var quoteRepositories = List.of(
+                new JdbcQuoteRepository(statementCountingDataSource),
+                new JdbcQuoteRepositoryUsingJson(statementCountingDataSource),
+                new JdbcQuoteRepositoryUsingOnlyJson(statementCountingDataSource)
+        );
+
+        for (QuoteRepository quoteRepository : quoteRepositories) {
+            for (int numberOfSubjects : List.of(0, 1, 2, 10, 50)) {
+                var subjects = IntStream.range(0, numberOfSubjects)
+                        .mapToObj(i -> "subject " + i)
+                        .collect(ImmutableList.toImmutableList());
+                var quoteData = new QuoteData("Quote with many subjects", "Counting author", subjects);
+
+                statementCountingDataSource.resetStatementCount();
+                var quote = quoteRepository.addQuote(quoteData);
+
+                // One insert for the quote and, if there are any subjects, one insert for all subjects
+                Assertions.assertEquals(numberOfSubjects == 0 ? 1 : 2, statementCountingDataSource.getStatementCount());
+                Assertions.assertEquals(
+                        normalize(ImmutableList.of(quote)),
+                        normalize(jdbcQuoteRepository.findByAttributedTo("Counting author")));
+
+                quoteRepository.deleteQuote(quote.id());
+            }
+        }
+    }
+
+    /**
+     * DataSource counting the statements created on its connections. Each statement created by the
+     * repositories is executed once, so this is the number of database round trips for statements.
+     */
+    private static final class StatementCountingDataSource extends DelegatingDataSource {
+
+        private final AtomicInteger statementCount = new AtomicInteger();
+
+        StatementCountingDataSource(DataSource targetDataSource) {
+            super(targetDataSource);
+        }
+
+        int getStatementCount() {
+            return statementCount.get();
+        }
+
+        void resetStatementCount() {
+            statementCount.set(0);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            var connection = super.getConnection();
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().startsWith("prepare") || method.getName().equals("createStatement")) {
+                            statementCount.incrementAndGet();
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+
+    private ImmutableList<Quote> normalize(ImmutableList<Quote> quotes) {
+        // The order of quotes and of their subjects is not prescribed
+        return quotes.stream()
+                .map(qt -> new Quote(
+                        qt.id(),
+                        qt.text(),
+                        qt.attributedTo(),
+                        qt.subjects().stream().sorted().collect(ImmutableList.toImmutableList())))
+                .sorted(Comparator.comparingLong(Quote::id))
+                .collect(ImmutableList.toImmutableList());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.quotes.repository.nonpersistent;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.model.QuoteChange;
+import eu.cdevreeze.quotes.repository.QuoteChangeRepository;
+import eu.cdevreeze.quotes.repository.QuoteRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * In-memory "implementation" of QuoteChangeRepository, meant to be used in unit tests, together with a
+ * NonPersistentQuoteRepository (from which the quotes of "added" changes are taken).
+ *
+ * @author Chris de Vreeze
+ */
+public class NonPersistentQuoteChangeRepository implements QuoteChangeRepository {
+
+    private record Change(long seq, QuoteChange.Type type, long quoteId) {
+    }
+
+    private final QuoteRepository quoteRepository;
+    private final List<Change> changes = new ArrayList<>();
+
+    public NonPersistentQuoteChangeRepository(QuoteRepository quoteRepository) {
+        this.quoteRepository = quoteRepository;
+    }
+
+    public synchronized void reset() {
+        changes.clear();
+    }
+
+    @Override
+    public synchronized void addChanges(QuoteChange.Type changeType, List<Long> quoteIds) {
+        for (long quoteId : quoteIds) {
+            changes.add(new Change(changes.size() + 1, changeType, quoteId));
+        }
+    }
+
+    @Override
+    public synchronized ImmutableList<QuoteChange> findChangesAfter(long afterSeq, int limit) {
+        Preconditions.checkArgument(limit > 0);
+        return changes.stream()
+                .filter(change -> change.seq() > afterSeq)
+                .limit(limit)
+                .map(change -> new QuoteChange(
+                        change.seq(),
+                        change.type(),
+                        change.quoteId(),
+                        change.type() == QuoteChange.Type.ADDED ? findQuote(change.quoteId()) : Optional.empty()))
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    private Optional<Quote> findQuote(long quoteId) {
+        return quoteRepository.findQuotesAfter(quoteId - 1, 1).stream()
+                .filter(quote -> quote.id() == quoteId)
+                .findFirst();
+    }
+}
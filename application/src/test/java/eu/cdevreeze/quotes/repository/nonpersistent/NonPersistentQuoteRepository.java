@@ -21,12 +21,13 @@ import com.google.common.collect.ImmutableMap;
 import eu.cdevreeze.quotes.model.Quote;
 import eu.cdevreeze.quotes.model.QuoteData;
 import eu.cdevreeze.quotes.repository.QuoteRepository;
+import eu.cdevreeze.quotes.repository.index.QuoteIndex;
 import eu.cdevreeze.quotes.sampledata.SampleData;
 
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * In-memory "implementation" of QuoteRepository, meant to be used in unit tests (of web controllers etc.).
@@ -36,10 +37,10 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 public class NonPersistentQuoteRepository implements QuoteRepository {
 
-    private final AtomicReference<ImmutableMap<Long, Quote>> quoteDatabase;
+    private final AtomicReference<QuoteIndex> quoteDatabase;
 
     public NonPersistentQuoteRepository(ImmutableMap<Long, Quote> initialQuoteDatabaseContent) {
-        this.quoteDatabase = new AtomicReference<>(initialQuoteDatabaseContent);
+        this.quoteDatabase = new AtomicReference<>(QuoteIndex.of(initialQuoteDatabaseContent.values()));
     }
 
     public NonPersistentQuoteRepository() {
@@ -47,50 +48,75 @@ public class NonPersistentQuoteRepository implements QuoteRepository {
     }
 
     public void reset(ImmutableMap<Long, Quote> initialQuoteDatabaseContent) {
-        this.quoteDatabase.set(initialQuoteDatabaseContent);
+        this.quoteDatabase.set(QuoteIndex.of(initialQuoteDatabaseContent.values()));
     }
 
     @Override
     public ImmutableList<Quote> findAllQuotes() {
-        return quoteDatabase.get().values().stream().collect(ImmutableList.toImmutableList());
+        return quoteDatabase.get().findAllQuotes();
+    }
+
+    @Override
+    public void forEachQuote(Consumer<? super Quote> action) {
+        quoteDatabase.get().findAllQuotes().forEach(action);
+    }
+
+    @Override
+    public ImmutableList<Quote> findQuotesAfter(long afterId, int limit) {
+        return quoteDatabase.get().findQuotesAfter(afterId, limit);
     }
 
     @Override
     public ImmutableList<Quote> findBySubject(String subject) {
-        return findAllQuotes().stream()
-                .filter(qt -> qt.subjects().contains(subject))
-                .collect(ImmutableList.toImmutableList());
+        return quoteDatabase.get().findBySubject(subject);
     }
 
     @Override
     public ImmutableList<Quote> findByAttributedTo(String attributedTo) {
-        return findAllQuotes().stream()
-                .filter(qt -> qt.attributedTo().equals(attributedTo))
-                .collect(ImmutableList.toImmutableList());
+        return quoteDatabase.get().findByAttributedTo(attributedTo);
+    }
+
+    @Override
+    public ImmutableList<Quote> searchQuotes(String query, int limit) {
+        return quoteDatabase.get().searchQuotes(query, limit);
+    }
+
+    @Override
+    public Optional<Quote> findRandomQuote() {
+        return quoteDatabase.get().findRandomQuote();
+    }
+
+    @Override
+    public Optional<Quote> findRandomQuoteBySubject(String subject) {
+        return quoteDatabase.get().findRandomQuoteBySubject(subject);
     }
 
     @Override
     public Quote addQuote(QuoteData quoteData) {
-        AtomicReference<Quote> quoteRef = new AtomicReference<>();
+        return addQuotes(List.of(quoteData)).get(0);
+    }
+
+    @Override
+    public ImmutableList<Quote> addQuotes(List<QuoteData> quoteDataRecords) {
+        AtomicReference<ImmutableList<Quote>> quotesRef = new AtomicReference<>();
         quoteDatabase.updateAndGet(db -> {
-            long nextId = 1L + db.keySet().stream().max(Comparator.naturalOrder()).orElse(0L);
-            Quote quote = new Quote(nextId, quoteData.text(), quoteData.attributedTo(), quoteData.subjects());
-            quoteRef.set(quote);
-            Map<Long, Quote> tempDb = new HashMap<>(db);
-            tempDb.put(nextId, quote);
-            return ImmutableMap.copyOf(tempDb);
+            var allQuotes = db.findAllQuotes();
+            long nextId = 1L + (allQuotes.isEmpty() ? 0L : allQuotes.get(allQuotes.size() - 1).id());
+            ImmutableList.Builder<Quote> quotes = ImmutableList.builder();
+            for (QuoteData quoteData : quoteDataRecords) {
+                quotes.add(new Quote(nextId, quoteData.text(), quoteData.attributedTo(), quoteData.subjects()));
+                nextId += 1;
+            }
+            quotesRef.set(quotes.build());
+            return db.withQuotes(quotesRef.get());
         });
-        return quoteRef.get();
+        return quotesRef.get();
     }
 
     @Override
-    public void deleteQuote(long quoteId) {
-        quoteDatabase.updateAndGet(db ->
-                db.entrySet()
-                        .stream()
-                        .filter(kv -> kv.getKey() != quoteId)
-                        .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue))
-        );
+    public boolean deleteQuote(long quoteId) {
+        var oldDatabase = quoteDatabase.getAndUpdate(db -> db.withoutQuote(quoteId));
+        return oldDatabase.findById(quoteId).isPresent();
     }
 
     private static ImmutableMap<Long, Quote> getAllQuotes() {
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.sampledata;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Multisets;
+import com.google.common.collect.HashMultiset;
+import eu.cdevreeze.quotes.internal.utils.ObjectMappers;
+import eu.cdevreeze.quotes.model.QuoteData;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test of SyntheticQuoteData.
+ *
+ * @author Chris de Vreeze
+ */
+class SyntheticQuoteDataTest {
+
+    private static final int NUMBER_OF_QUOTES = 20_000;
+
+    @Test
+    void shouldGenerateSameQuotesForSameSeed() {
+        var quotes = new SyntheticQuoteData(1L).quotes(NUMBER_OF_QUOTES).toList();
+
+        Assertions.assertEquals(NUMBER_OF_QUOTES, quotes.size());
+        Assertions.assertEquals(quotes, new SyntheticQuoteData(1L).quotes(NUMBER_OF_QUOTES).toList());
+        Assertions.assertEquals(quotes.subList(0, 100), new SyntheticQuoteData(1L).quotes(100).toList());
+        Assertions.assertNotEquals(quotes, new SyntheticQuoteData(2L).quotes(NUMBER_OF_QUOTES).toList());
+    }
+
+    @Test
+    void shouldGenerateValidQuotes() {
+        var quotes = new SyntheticQuoteData(1L).quotes(NUMBER_OF_QUOTES).toList();
+
+        for (QuoteData quote : quotes) {
+            Assertions.assertFalse(quote.text().isBlank());
+            Assertions.assertTrue(quote.text().length() <= SyntheticQuoteData.MAX_TEXT_LENGTH);
+            Assertions.assertFalse(quote.attributedTo().isBlank());
+            Assertions.assertFalse(quote.subjects().isEmpty());
+            Assertions.assertTrue(quote.subjects().size() <= SyntheticQuoteData.MAX_SUBJECTS_PER_QUOTE);
+            Assertions.assertEquals(quote.subjects().size(), quote.subjects().stream().distinct().count());
+        }
+
+        // Text lengths vary, with a long tail
+        var textLengths = quotes.stream().mapToInt(qt -> qt.text().length()).sorted().toArray();
+        Assertions.assertTrue(textLengths[NUMBER_OF_QUOTES / 2] < 200);
+        Assertions.assertTrue(textLengths[NUMBER_OF_QUOTES - 1] > 1000);
+    }
+
+    @Test
+    void shouldGenerateSkewedAuthorsAndSubjects() {
+        var quotes = new SyntheticQuoteData(1L).quotes(NUMBER_OF_QUOTES).toList();
+
+        Multiset<String> authorCounts = HashMultiset.create();
+        quotes.forEach(qt -> authorCounts.add(qt.attributedTo()));
+        var sortedAuthorCounts = Multisets.copyHighestCountFirst(authorCounts).entrySet().stream()
+                .map(Multiset.Entry::getCount)
+                .toList();
+
+        // Zipf: the most popular author has far more quotes than the typical author
+        Assertions.assertTrue(sortedAuthorCounts.getFirst() > 50 * sortedAuthorCounts.get(sortedAuthorCounts.size() / 2));
+
+        // Power law: most quotes have 1 subject, but some have many
+        var subjectCounts = quotes.stream().map(qt -> qt.subjects().size()).toList();
+        Assertions.assertTrue(subjectCounts.stream().filter(n -> n == 1).count() > NUMBER_OF_QUOTES / 2);
+        Assertions.assertTrue(subjectCounts.stream().anyMatch(n -> n >= 5));
+    }
+
+    @Test
+    void shouldWriteJsonArrayAndNdjson() throws IOException {
+        var syntheticQuoteData = new SyntheticQuoteData(3L);
+        var expectedQuotes = syntheticQuoteData.quotes(1000).toList();
+        var objectMapper = ObjectMappers.getObjectMapper(false);
+
+        var jsonArrayOutput = new ByteArrayOutputStream();
+        syntheticQuoteData.writeJsonArray(1000, jsonArrayOutput);
+
+        Assertions.assertEquals(
+                expectedQuotes,
+                objectMapper.readValue(jsonArrayOutput.toByteArray(), new TypeReference<ImmutableList<QuoteData>>() {
+                }));
+
+        var ndjsonOutput = new ByteArrayOutputStream();
+        syntheticQuoteData.writeNdjson(1000, ndjsonOutput);
+        var lines = ndjsonOutput.toString(StandardCharsets.UTF_8).lines().toList();
+
+        Assertions.assertEquals(1000, lines.size());
+        List<QuoteData> ndjsonQuotes = new ArrayList<>();
+        for (String line : lines) {
+            ndjsonQuotes.add(objectMapper.readValue(line, QuoteData.class));
+        }
+        Assertions.assertEquals(expectedQuotes, ndjsonQuotes);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.service.impl;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.repository.nonpersistent.NonPersistentQuoteChangeRepository;
+import eu.cdevreeze.quotes.repository.nonpersistent.NonPersistentQuoteRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test of ExecutorBackedAsyncQuoteService, with 1 thread and a queue capacity of 1, on top of a
+ * NonPersistentQuoteRepository whose lookups by subject block until released. The tests run both with the pool of
+ * platform threads and with virtual threads.
+ *
+ * @author Chris de Vreeze
+ */
+class ExecutorBackedAsyncQuoteServiceTest {
+
+    private BlockingQuoteRepository quoteRepository;
+    private TransactionalQuoteService quoteService;
+    private ExecutorBackedAsyncQuoteService asyncQuoteService;
+
+    @BeforeEach
+    void setUp() {
+        quoteRepository = new BlockingQuoteRepository();
+        quoteService = new TransactionalQuoteService(
+                quoteRepository, new NonPersistentQuoteChangeRepository(quoteRepository), event -> {
+                }, new QuoteDataVersionTracker());
+    }
+
+    @AfterEach
+    void tearDown() {
+        quoteRepository.released.countDown();
+        if (asyncQuoteService != null) {
+            asyncQuoteService.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void shouldReturnQueryResults(boolean virtualThreads) throws Exception {
+        createAsyncQuoteService(virtualThreads);
+        Assertions.assertEquals(
+                quoteService.findByAttributedTo("Wim Hof"),
+                asyncQuoteService.findByAttributedTo("Wim Hof").get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(
+                quoteService.searchQuotes("peace liberty", 3),
+                asyncQuoteService.searchQuotes("peace liberty", 3).get(5, TimeUnit.SECONDS));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void shouldTimeOutAndRemoveQueriesThatHaveNotStarted(boolean virtualThreads) throws Exception {
+        createAsyncQuoteService(virtualThreads);
+        var runningQuery = startBlockingQuery();
+        var waitingQuery = asyncQuoteService.findBySubject("peace");
+
+        var exception = Assertions.assertThrows(ExecutionException.class, () -> runningQuery.get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(TimeoutException.class, exception.getCause());
+        exception = Assertions.assertThrows(ExecutionException.class, () -> waitingQuery.get(5, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(TimeoutException.class, exception.getCause());
+
+        // The timed-out query frees its place in the queue, even while the running query still blocks the thread
+        awaitNoWaitingQueries();
+        var nextQuery = asyncQuoteService.findByAttributedTo("Wim Hof");
+        Assertions.assertFalse(nextQuery.isCompletedExceptionally());
+
+        quoteRepository.released.countDown();
+        Assertions.assertEquals(quoteService.findByAttributedTo("Wim Hof"), nextQuery.get(5, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(1, quoteRepository.findBySubjectCount.get());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void shouldRemoveCancelledQueriesThatHaveNotStarted(boolean virtualThreads) throws Exception {
+        createAsyncQuoteService(virtualThreads);
+        var runningQuery = startBlockingQuery();
+        var waitingQuery = asyncQuoteService.findBySubject("peace");
+        Assertions.assertEquals(1, asyncQuoteService.getWaitingQueryCount());
+
+        waitingQuery.cancel(false);
+
+        Assertions.assertEquals(0, asyncQuoteService.getWaitingQueryCount());
+        quoteRepository.released.countDown();
+        runningQuery.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(1, quoteRepository.findBySubjectCount.get());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void shouldRejectQueriesBeyondQueueCapacity(boolean virtualThreads) throws Exception {
+        createAsyncQuoteService(virtualThreads);
+        var runningQuery = startBlockingQuery();
+        var waitingQuery = asyncQuoteService.findBySubject("peace");
+        var rejectedQuery = asyncQuoteService.findBySubject("peace");
+
+        Assertions.assertFalse(runningQuery.isDone());
+        Assertions.assertFalse(waitingQuery.isDone());
+        Assertions.assertTrue(rejectedQuery.isCompletedExceptionally());
+        var exception = Assertions.assertThrows(ExecutionException.class, rejectedQuery::get);
+        Assertions.assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+    }
+
+    private void createAsyncQuoteService(boolean virtualThreads) {
+        asyncQuoteService = new ExecutorBackedAsyncQuoteService(quoteService, 1, 1, Duration.ofMillis(500), virtualThreads);
+    }
+
+    /**
+     * Starts a lookup by subject, and waits until it runs (and blocks), so that the next query has to wait.
+     */
+    private CompletableFuture<ImmutableList<Quote>> startBlockingQuery() throws InterruptedException {
+        var query = asyncQuoteService.findBySubject("peace");
+        Assertions.assertTrue(quoteRepository.started.await(5, TimeUnit.SECONDS));
+        return query;
+    }
+
+    private void awaitNoWaitingQueries() throws InterruptedException {
+        // The queue is cleaned up by a completion callback, which may run just after the caller has seen the timeout
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (asyncQuoteService.getWaitingQueryCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(0, asyncQuoteService.getWaitingQueryCount());
+    }
+
+    private static class BlockingQuoteRepository extends NonPersistentQuoteRepository {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final AtomicInteger findBySubjectCount = new AtomicInteger(0);
+
+        @Override
+        public ImmutableList<Quote> findBySubject(String subject) {
+            findBySubjectCount.incrementAndGet();
+            started.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            return super.findBySubject(subject);
+        }
+    }
+}
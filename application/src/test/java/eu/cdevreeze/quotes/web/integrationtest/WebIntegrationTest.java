@@ -22,7 +22,10 @@ import eu.cdevreeze.quotes.internal.utils.ObjectMappers;
 import eu.cdevreeze.quotes.model.Quote;
 import eu.cdevreeze.quotes.model.QuoteData;
 import eu.cdevreeze.quotes.sampledata.SampleData;
+import eu.cdevreeze.quotes.sampledata.SyntheticQuoteData;
+import eu.cdevreeze.quotes.repository.QuoteChangeRepository;
 import eu.cdevreeze.quotes.repository.QuoteRepository;
+import eu.cdevreeze.quotes.repository.nonpersistent.NonPersistentQuoteChangeRepository;
 import eu.cdevreeze.quotes.repository.nonpersistent.NonPersistentQuoteRepository;
 import eu.cdevreeze.quotes.service.QuoteService;
 import org.hamcrest.Matcher;
@@ -34,10 +37,13 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -64,25 +70,38 @@ class WebIntegrationTest {
     @TestConfiguration
     public static class TestConfig {
 
-        // Overriding the JDBC QuoteRepository
+        // Overriding the JDBC QuoteRepository and QuoteChangeRepository
 
         @Bean
         @Primary
         public QuoteRepository testQuoteRepository() {
             return new NonPersistentQuoteRepository();
         }
+
+        @Bean
+        @Primary
+        public QuoteChangeRepository testQuoteChangeRepository() {
+            return new NonPersistentQuoteChangeRepository(testQuoteRepository());
+        }
     }
 
     private final MockMvc mockMvc;
     private final QuoteRepository quoteRepository;
+    private final QuoteChangeRepository quoteChangeRepository;
     private final QuoteService quoteService;
 
     private ImmutableMap<Long, Quote> initialDatabaseContent = ImmutableMap.of();
 
     @Autowired
-    public WebIntegrationTest(MockMvc mockMvc, QuoteRepository quoteRepository, QuoteService quoteService) {
+    public WebIntegrationTest(
+            MockMvc mockMvc,
+            QuoteRepository quoteRepository,
+            QuoteChangeRepository quoteChangeRepository,
+            QuoteService quoteService
+    ) {
         this.mockMvc = mockMvc;
         this.quoteRepository = quoteRepository;
+        this.quoteChangeRepository = quoteChangeRepository;
         this.quoteService = quoteService;
     }
 
@@ -96,11 +115,17 @@ class WebIntegrationTest {
     @BeforeEach
     void reloadDatabase() {
         ((NonPersistentQuoteRepository) quoteRepository).reset(initialDatabaseContent);
+        ((NonPersistentQuoteChangeRepository) quoteChangeRepository).reset();
     }
 
     @Test
     void shouldReturnAllQuotes() throws Exception {
-        this.mockMvc.perform(get("/quotes.json")).andDo(print())
+        // The response is streamed, so asynchronously
+        var mvcResult = this.mockMvc.perform(get("/quotes.json"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(mvcResult)).andDo(print())
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$[0].attributedTo", Matchers.equalTo("Wim Hof")))
@@ -127,13 +152,39 @@ class WebIntegrationTest {
                 .andExpect(jsonPath("$[28].attributedTo", Matchers.equalTo("Nikola Tesla")))
                 .andExpect(jsonPath("$[28].subjects[0]", Matchers.equalTo("hidden knowledge")))
                 .andExpect(jsonPath("$[29].attributedTo", Matchers.equalTo("Nikola Tesla")))
-                .andExpect(jsonPath("$[29].subjects[0]", Matchers.equalTo("hidden knowledge")));
+                .andExpect(jsonPath("$[29].subjects[0]", Matchers.equalTo("hidden knowledge")))
+                .andExpect(jsonPath("$.length()", Matchers.equalTo(initialDatabaseContent.size())));
+    }
+
+    @Test
+    void shouldReturnPageOfQuotes() throws Exception {
+        performAsync(get("/quotes.json").param("after", "10").param("limit", "5")).andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.length()", Matchers.equalTo(5)))
+                .andExpect(jsonPath("$[0].id", Matchers.equalTo(11)))
+                .andExpect(jsonPath("$[0].attributedTo", Matchers.equalTo("Ron Paul")))
+                .andExpect(jsonPath("$[4].id", Matchers.equalTo(15)))
+                .andExpect(header().string("Link", Matchers.containsString("after=15")))
+                .andExpect(header().string("Link", Matchers.containsString("limit=5")))
+                .andExpect(header().string("Link", Matchers.endsWith("rel=\"next\"")));
+    }
+
+    @Test
+    void shouldReturnLastPageOfQuotesWithoutNextLink() throws Exception {
+        var numberOfQuotes = quoteService.findAllQuotes().size();
+
+        performAsync(get("/quotes.json").param("after", String.valueOf(numberOfQuotes - 2)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", Matchers.equalTo(2)))
+                .andExpect(header().doesNotExist("Link"));
     }
 
     @Test
     void shouldReturnQuotesBySubject() throws Exception {
         var subject = "peace";
-        this.mockMvc.perform(get("/quotesBySubject.json").param("subject", subject))
+        performAsync(get("/quotesBySubject.json").param("subject", subject))
                 .andDo(print())
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
@@ -145,10 +196,96 @@ class WebIntegrationTest {
                 .andExpect(jsonPath("$[1].subjects[1]", Matchers.equalTo("peace")));
     }
 
+    @Test
+    void shouldReturnCompactJsonUnlessPrettyPrintingRequested() throws Exception {
+        var quotes = quoteService.findBySubject("peace");
+
+        performAsync(get("/quotesBySubject.json").param("subject", "peace"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(ObjectMappers.getObjectMapper(false).writeValueAsString(quotes)));
+
+        performAsync(get("/quotesBySubject.json").param("subject", "peace").param("pretty", "true"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(ObjectMappers.getObjectMapper(true).writeValueAsString(quotes)));
+    }
+
+    @Test
+    void shouldStreamCompactJsonUnlessPrettyPrintingRequested() throws Exception {
+        var quotes = quoteService.findAllQuotes();
+
+        var mvcResult = this.mockMvc.perform(get("/quotes.json")).andReturn();
+        this.mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().string(ObjectMappers.getObjectMapper(false).writeValueAsString(quotes)));
+
+        var prettyMvcResult = this.mockMvc.perform(get("/quotes.json").param("pretty", "true")).andReturn();
+        this.mockMvc.perform(asyncDispatch(prettyMvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().string(ObjectMappers.getObjectMapper(true).writeValueAsString(quotes)));
+    }
+
+    @Test
+    void shouldReturnNotModifiedUntilQuotesChange() throws Exception {
+        var etag = performAsync(get("/quotesBySubject.json").param("subject", "peace"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(header().doesNotExist(HttpHeaders.LAST_MODIFIED))
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+
+        // Not modified, so no (asynchronous) query is started
+        this.mockMvc.perform(get("/quotesBySubject.json").param("subject", "peace").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        // No (asynchronous) streaming of all quotes is started
+        this.mockMvc.perform(get("/quotes.json").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isNotModified());
+        this.mockMvc.perform(get("/quotes.html").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        quoteService.addQuote(new QuoteData("Nothing changes, until it does.", "Anonymous", ImmutableList.of("peace")));
+
+        performAsync(get("/quotesBySubject.json").param("subject", "peace").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, Matchers.not(etag)))
+                .andExpect(jsonPath("$.length()", Matchers.equalTo(3)));
+    }
+
+    @Test
+    void shouldUseOtherEtagForPrettyPrintedJson() throws Exception {
+        var etag = performAsync(get("/quotesBySubject.json").param("subject", "peace"))
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+        var prettyEtag = performAsync(get("/quotesBySubject.json").param("subject", "peace").param("pretty", "true"))
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+
+        Assertions.assertNotEquals(etag, prettyEtag);
+        performAsync(get("/quotesBySubject.json").param("subject", "peace").param("pretty", "true")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(get("/quotesBySubject.json").param("subject", "peace").param("pretty", "true")
+                        .header(HttpHeaders.IF_NONE_MATCH, prettyEtag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void shouldIgnoreIfModifiedSince() throws Exception {
+        // Without Last-Modified, a date cannot tell whether the client has the current quotes
+        performAsync(get("/quotesBySubject.json").param("subject", "peace")
+                .header(HttpHeaders.IF_MODIFIED_SINCE, "Fri, 31 Dec 9999 23:59:59 GMT"))
+                .andExpect(status().isOk());
+    }
+
     @Test
     void shouldReturnQuotesByAttributedTo() throws Exception {
         var attributedTo = "Wim Hof";
-        this.mockMvc.perform(get("/quotesByAttributedTo.json").param("attributedTo", attributedTo))
+        performAsync(get("/quotesByAttributedTo.json").param("attributedTo", attributedTo))
                 .andDo(print())
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
@@ -174,7 +311,7 @@ class WebIntegrationTest {
                 .map(qt -> (Matcher<? super String>) Matchers.equalTo(qt.subjects().getFirst())).collect(Collectors.toList());
         Matcher<? super String> anySubjectMatcher = Matchers.anyOf(subjectMatchers);
 
-        this.mockMvc.perform(get("/randomQuote.json")).andDo(print())
+        performAsync(get("/randomQuote.json")).andDo(print())
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.attributedTo").isString())
@@ -185,6 +322,55 @@ class WebIntegrationTest {
                 .andExpect(jsonPath("$.subjects[0]").value(anySubjectMatcher));
     }
 
+    @Test
+    void shouldReturnRandomQuoteBySubject() throws Exception {
+        performAsync(get("/randomQuote.json").param("subject", "peace")).andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.subjects").value(Matchers.hasItem("peace")));
+
+        performAsync(get("/randomQuote.json").param("subject", "non-existing subject"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void shouldSearchQuotes() throws Exception {
+        var expectedQuotes = quoteService.searchQuotes("peace liberty", 3);
+
+        Assertions.assertEquals(3, expectedQuotes.size());
+
+        performAsync(get("/quotes/search.json").param("query", "peace liberty").param("limit", "3")).andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].id").value(expectedQuotes.get(0).id()))
+                .andExpect(jsonPath("$[2].id").value(expectedQuotes.get(2).id()));
+
+        this.mockMvc.perform(get("/quotes/search.json").param("query", "peace").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldLoadSyntheticQuotesOnlyIntoEmptyDatabase() throws Exception {
+        var expectedQuotes = new SyntheticQuoteData(7L).quotes(2500).toList();
+
+        this.mockMvc.perform(post("/admin/loadSyntheticQuotes").param("numberOfQuotes", "2500").param("seed", "7"))
+                .andExpect(status().isOk());
+
+        Assertions.assertEquals(initialDatabaseContent.size(), quoteService.findAllQuotes().size());
+
+        ((NonPersistentQuoteRepository) quoteRepository).reset(ImmutableMap.of());
+
+        this.mockMvc.perform(post("/admin/loadSyntheticQuotes").param("numberOfQuotes", "2500").param("seed", "7"))
+                .andExpect(status().isOk());
+
+        Assertions.assertEquals(
+                expectedQuotes,
+                quoteService.findAllQuotes().stream()
+                        .map(qt -> new QuoteData(qt.text(), qt.attributedTo(), qt.subjects()))
+                        .toList());
+    }
+
     @Test
     void shouldAddQuote() throws Exception {
         var numberOfQuotes = quoteService.findAllQuotes().size();
@@ -211,6 +397,42 @@ class WebIntegrationTest {
         Assertions.assertEquals(newNumberOfQuotes, numberOfQuotes + 1);
     }
 
+    @Test
+    void shouldAddQuotes() throws Exception {
+        var numberOfQuotes = quoteService.findAllQuotes().size();
+
+        var quoteDataRecords = ImmutableList.of(
+                new QuoteData(
+                        "We'll know our disinformation program is complete when everything the American public believes is false.",
+                        "William Casey",
+                        ImmutableList.of("corrupt government")),
+                new QuoteData(
+                        "The planet is fine. The people are fucked.",
+                        "George Carlin",
+                        ImmutableList.of("comedy", "brutal honesty"))
+        );
+        var objectMapper = ObjectMappers.getObjectMapper();
+        var jsonRequestPayload = objectMapper.writer().writeValueAsString(quoteDataRecords);
+
+        this.mockMvc.perform(
+                        post("/quotes")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(jsonRequestPayload)
+                                .accept(MediaType.APPLICATION_JSON)
+                ).andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", Matchers.equalTo(2)))
+                .andExpect(jsonPath("$[0].id", Matchers.equalTo(numberOfQuotes + 1)))
+                .andExpect(jsonPath("$[0].attributedTo", Matchers.equalTo("William Casey")))
+                .andExpect(jsonPath("$[1].id", Matchers.equalTo(numberOfQuotes + 2)))
+                .andExpect(jsonPath("$[1].attributedTo", Matchers.equalTo("George Carlin")))
+                .andExpect(jsonPath("$[1].subjects[1]", Matchers.equalTo("brutal honesty")));
+
+        var newNumberOfQuotes = quoteService.findAllQuotes().size();
+
+        Assertions.assertEquals(newNumberOfQuotes, numberOfQuotes + 2);
+    }
+
     @Test
     void shouldDeleteQuote() throws Exception {
         var numberOfQuotes = quoteService.findAllQuotes().size();
@@ -225,4 +447,57 @@ class WebIntegrationTest {
 
         Assertions.assertEquals(newNumberOfQuotes, numberOfQuotes - 1);
     }
+
+    @Test
+    void shouldReturnQuoteChangesSinceSequenceNumber() throws Exception {
+        var addedQuotes = quoteService.addQuotes(ImmutableList.of(
+                new QuoteData("First added quote", "Change author", ImmutableList.of("change")),
+                new QuoteData("Second added quote", "Change author", ImmutableList.of())));
+        quoteService.deleteQuote(addedQuotes.get(0).id());
+
+        performAsync(get("/quotes/changes.json").param("limit", "2")).andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", Matchers.equalTo(2)))
+                .andExpect(jsonPath("$[0].seq", Matchers.equalTo(1)))
+                .andExpect(jsonPath("$[0].type", Matchers.equalTo("ADDED")))
+                .andExpect(jsonPath("$[0].quoteId", Matchers.equalTo((int) addedQuotes.get(0).id())))
+                // The quote has been deleted since (change 3)
+                .andExpect(jsonPath("$[0].quote", Matchers.nullValue()))
+                .andExpect(jsonPath("$[1].seq", Matchers.equalTo(2)))
+                .andExpect(jsonPath("$[1].quote.text", Matchers.equalTo("Second added quote")))
+                .andExpect(header().string("Link", Matchers.containsString("since=2")))
+                .andExpect(header().string("Link", Matchers.endsWith("rel=\"next\"")));
+
+        performAsync(get("/quotes/changes.json").param("since", "2").param("limit", "2")).andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", Matchers.equalTo(1)))
+                .andExpect(jsonPath("$[0].seq", Matchers.equalTo(3)))
+                .andExpect(jsonPath("$[0].type", Matchers.equalTo("DELETED")))
+                .andExpect(jsonPath("$[0].quoteId", Matchers.equalTo((int) addedQuotes.get(0).id())))
+                .andExpect(header().doesNotExist("Link"));
+    }
+
+    @Test
+    void shouldNotRecordChangeWhenDeletingNonExistingQuote() throws Exception {
+        var dataVersion = quoteService.getDataVersion();
+
+        this.mockMvc.perform(delete("/quotes/" + 999_999L))
+                .andDo(print())
+                .andExpect(status().isOk());
+
+        Assertions.assertEquals(dataVersion, quoteService.getDataVersion());
+        Assertions.assertEquals(ImmutableList.of(), quoteService.findChangesAfter(0L, 10));
+        Assertions.assertEquals(initialDatabaseContent.size(), quoteService.findAllQuotes().size());
+    }
+
+    /**
+     * Performs a request that is handled asynchronously (e.g. using the AsyncQuoteService), and then performs
+     * the asynchronous dispatch, returning the latter's result actions.
+     */
+    private ResultActions performAsync(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        var mvcResult = this.mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return this.mockMvc.perform(asyncDispatch(mvcResult));
+    }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.quotes.web.rest;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.service.QuoteDataChangedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test of QuoteEventStreams (and its controller, using a standalone MockMvc). The send tasks are collected,
+ * and only run when the test says so, which makes subscribers as slow as the test wants them to be.
+ *
+ * @author Chris de Vreeze
+ */
+class QuoteEventStreamsTest {
+
+    private final List<Runnable> pendingSendTasks = new ArrayList<>();
+
+    private QuoteEventStreams quoteEventStreams;
+
+    @AfterEach
+    void tearDown() {
+        quoteEventStreams.shutdown();
+    }
+
+    @Test
+    void shouldStreamAddedAndDeletedQuotes() throws Exception {
+        var mockMvc = setUp(10, 10, QuoteEventStreams.OverflowPolicy.DROP);
+        var response = subscribe(mockMvc);
+
+        quoteEventStreams.onQuoteDataChanged(QuoteDataChangedEvent.quotesAdded(ImmutableList.of(
+                new Quote(100L, "Streamed quote", "Stream author", ImmutableList.of("streaming")))));
+        quoteEventStreams.onQuoteDataChanged(QuoteDataChangedEvent.quoteDeleted(27L));
+        runPendingSendTasks();
+
+        var content = response.getContentAsString();
+        Assertions.assertTrue(content.startsWith(":connected\n\n"));
+        Assertions.assertTrue(content.contains("event:quotes-added\ndata:[{\"id\":100,\"text\":\"Streamed quote\""));
+        Assertions.assertTrue(content.contains("event:quotes-deleted\ndata:[27]\n\n"));
+        Assertions.assertTrue(content.indexOf("quotes-added") < content.indexOf("quotes-deleted"));
+
+        quoteEventStreams.sendHeartbeats();
+        runPendingSendTasks();
+
+        Assertions.assertTrue(response.getContentAsString().endsWith(":heartbeat\n\n"));
+    }
+
+    @Test
+    void shouldDropEventsForSlowSubscriber() throws Exception {
+        var mockMvc = setUp(10, 3, QuoteEventStreams.OverflowPolicy.DROP);
+        var response = subscribe(mockMvc);
+
+        // The "connected" comment takes one place in the buffer
+        IntStream.range(0, 5).forEach(i -> quoteEventStreams.onQuoteDataChanged(QuoteDataChangedEvent.quoteDeleted(i)));
+        runPendingSendTasks();
+
+        var content = response.getContentAsString();
+        Assertions.assertTrue(content.contains("data:[0]\n\n"));
+        Assertions.assertTrue(content.contains("data:[1]\n\n"));
+        Assertions.assertFalse(content.contains("data:[2]\n\n"));
+        Assertions.assertTrue(content.endsWith("event:events-dropped\ndata:3\n\n"));
+        Assertions.assertEquals(1, quoteEventStreams.getSubscriberCount());
+    }
+
+    @Test
+    void shouldDisconnectSlowSubscriber() throws Exception {
+        var mockMvc = setUp(10, 3, QuoteEventStreams.OverflowPolicy.DISCONNECT);
+        var response = subscribe(mockMvc);
+
+        IntStream.range(0, 5).forEach(i -> quoteEventStreams.onQuoteDataChanged(QuoteDataChangedEvent.quoteDeleted(i)));
+
+        Assertions.assertEquals(0, quoteEventStreams.getSubscriberCount());
+
+        runPendingSendTasks();
+
+        Assertions.assertFalse(response.getContentAsString().contains("data:"));
+    }
+
+    @Test
+    void shouldRejectSubscribersBeyondMaximum() throws Exception {
+        var mockMvc = setUp(1, 10, QuoteEventStreams.OverflowPolicy.DROP);
+        subscribe(mockMvc);
+
+        mockMvc.perform(get("/quotes/stream").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    private MockMvc setUp(int maxSubscribers, int bufferSize, QuoteEventStreams.OverflowPolicy overflowPolicy) {
+        quoteEventStreams = new QuoteEventStreams(
+                pendingSendTasks::add, maxSubscribers, bufferSize, overflowPolicy, Duration.ofHours(1), Duration.ofHours(1));
+        return MockMvcBuilders.standaloneSetup(new QuoteEventStreamController(quoteEventStreams)).build();
+    }
+
+    private MockHttpServletResponse subscribe(MockMvc mockMvc) throws Exception {
+        var mvcResult = mockMvc.perform(get("/quotes/stream").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mvcResult.getResponse();
+    }
+
+    private void runPendingSendTasks() {
+        while (!pendingSendTasks.isEmpty()) {
+            pendingSendTasks.removeFirst().run();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.cdevreeze.quotes.web.rest;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.internal.utils.ObjectMappers;
+import eu.cdevreeze.quotes.repository.nonpersistent.NonPersistentQuoteChangeRepository;
+import eu.cdevreeze.quotes.repository.nonpersistent.NonPersistentQuoteRepository;
+import eu.cdevreeze.quotes.service.QuoteDataChangedEvent;
+import eu.cdevreeze.quotes.service.impl.ExecutorBackedAsyncQuoteService;
+import eu.cdevreeze.quotes.service.impl.QuoteDataVersionTracker;
+import eu.cdevreeze.quotes.service.impl.TransactionalQuoteService;
+import eu.cdevreeze.quotes.web.rest.QuotesJsonSnapshots.ContentCoding;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test of QuotesJsonSnapshots, and of serving the snapshot from QuotesRestController (using a standalone MockMvc).
+ * Quote data changes are simulated by passing QuoteDataChangedEvents to the QuoteDataVersionTracker directly.
+ *
+ * @author Chris de Vreeze
+ */
+class QuotesJsonSnapshotsTest {
+
+    private TransactionalQuoteService quoteService;
+    private QuoteDataVersionTracker dataVersionTracker;
+    private QuotesJsonSnapshots quotesJsonSnapshots;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        dataVersionTracker = new QuoteDataVersionTracker();
+        var quoteRepository = new NonPersistentQuoteRepository();
+        quoteService = new TransactionalQuoteService(
+                quoteRepository, new NonPersistentQuoteChangeRepository(quoteRepository), event -> {
+                }, dataVersionTracker);
+        // Background rebuilds are not run, so the tests determine when the snapshot is rebuilt
+        quotesJsonSnapshots = new QuotesJsonSnapshots(quoteService, task -> {
+        });
+        mockMvc = MockMvcBuilders
+                .standaloneSetup(new QuotesRestController(
+                        quoteService,
+                        new ExecutorBackedAsyncQuoteService(quoteService, 1, 10, Duration.ofSeconds(10), false),
+                        Optional.of(quotesJsonSnapshots)))
+                .build();
+    }
+
+    @Test
+    void shouldBuildCompressedSnapshotsOfAllQuotes() throws IOException {
+        var snapshot = quotesJsonSnapshots.rebuild();
+        var expectedJson = ObjectMappers.getObjectMapper(false).writeValueAsBytes(quoteService.findAllQuotes());
+
+        Assertions.assertArrayEquals(expectedJson, snapshot.json());
+        Assertions.assertArrayEquals(expectedJson, new GZIPInputStream(new ByteArrayInputStream(snapshot.gzippedJson())).readAllBytes());
+        Assertions.assertTrue(snapshot.gzippedJson().length < snapshot.json().length);
+    }
+
+    @Test
+    void shouldOnlyReturnUpToDateSnapshot() {
+        var snapshot = quotesJsonSnapshots.rebuild();
+
+        Assertions.assertEquals(Optional.of(snapshot), quotesJsonSnapshots.getUpToDateSnapshot());
+
+        dataVersionTracker.onQuoteDataChanged(QuoteDataChangedEvent.quoteDeleted(1L));
+
+        Assertions.assertEquals(Optional.empty(), quotesJsonSnapshots.getUpToDateSnapshot());
+    }
+
+    @Test
+    void shouldSelectContentCodingFromAcceptEncoding() {
+        Assertions.assertEquals(ContentCoding.IDENTITY, ContentCoding.select(null));
+        Assertions.assertEquals(ContentCoding.IDENTITY, ContentCoding.select("br"));
+        Assertions.assertEquals(ContentCoding.GZIP, ContentCoding.select("gzip, deflate, br"));
+        Assertions.assertEquals(ContentCoding.GZIP, ContentCoding.select("GZIP"));
+        Assertions.assertEquals(ContentCoding.GZIP, ContentCoding.select("gzip;q=0.5, deflate"));
+        Assertions.assertEquals(ContentCoding.GZIP, ContentCoding.select("deflate, *;q=0.1"));
+        Assertions.assertEquals(ContentCoding.IDENTITY, ContentCoding.select("deflate"));
+        Assertions.assertEquals(ContentCoding.IDENTITY, ContentCoding.select("gzip;q=0, *"));
+    }
+
+    @Test
+    void shouldServeSnapshotMatchingAcceptEncoding() throws Exception {
+        var snapshot = quotesJsonSnapshots.rebuild();
+        var etag = "\"" + snapshot.dataVersion().etag() + "-gzip\"";
+
+        var mvcResult = mockMvc.perform(get("/quotes.json").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().bytes(snapshot.gzippedJson()));
+
+        mockMvc.perform(get("/quotes.json").header(HttpHeaders.ACCEPT_ENCODING, "gzip").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        var identityMvcResult = mockMvc.perform(get("/quotes.json")).andReturn();
+        mockMvc.perform(asyncDispatch(identityMvcResult))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().string(new String(snapshot.json(), StandardCharsets.UTF_8)));
+
+        // Pretty-printed JSON is not in the snapshot, so it is serialized
+        var prettyMvcResult = mockMvc.perform(get("/quotes.json").param("pretty", "true").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(prettyMvcResult))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().string(ObjectMappers.getObjectMapper(true).writeValueAsString(quoteService.findAllQuotes())));
+    }
+
+    @Test
+    void shouldStreamQuotesWhileSnapshotIsOutdated() throws Exception {
+        quotesJsonSnapshots.rebuild();
+        dataVersionTracker.onQuoteDataChanged(QuoteDataChangedEvent.quotesAdded(ImmutableList.of()));
+
+        var mvcResult = mockMvc.perform(get("/quotes.json").header(HttpHeaders.ACCEPT_ENCODING, "gzip")).andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().string(ObjectMappers.getObjectMapper(false).writeValueAsString(quoteService.findAllQuotes())));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.web.rest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import eu.cdevreeze.quotes.internal.utils.ObjectMappers;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.repository.nonpersistent.NonPersistentQuoteChangeRepository;
+import eu.cdevreeze.quotes.repository.nonpersistent.NonPersistentQuoteRepository;
+import eu.cdevreeze.quotes.service.impl.QuoteDataVersionTracker;
+import eu.cdevreeze.quotes.service.impl.TransactionalQuoteService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Test of QuotesJsonWriting, in particular that a failure halfway does not result in well-formed JSON.
+ *
+ * @author Chris de Vreeze
+ */
+class QuotesJsonWritingTest {
+
+    @Test
+    void shouldWriteAllQuotesAsJsonArray() throws IOException {
+        var quoteService = createQuoteService(new NonPersistentQuoteRepository());
+        var outputStream = new ByteArrayOutputStream();
+
+        QuotesJsonWriting.writeAllQuotes(quoteService, QuotesJsonWriting.COMPACT_WRITER, outputStream);
+
+        Assertions.assertArrayEquals(
+                ObjectMappers.getObjectMapper(false).writeValueAsBytes(quoteService.findAllQuotes()),
+                outputStream.toByteArray());
+    }
+
+    @Test
+    void shouldLeaveJsonUnterminatedIfWritingFailsHalfway() {
+        var quoteService = createQuoteService(new FailingQuoteRepository(3));
+        var outputStream = new ByteArrayOutputStream();
+
+        Assertions.assertThrows(
+                QueryTimeoutException.class,
+                () -> QuotesJsonWriting.writeAllQuotes(quoteService, QuotesJsonWriting.COMPACT_WRITER, outputStream));
+
+        var json = outputStream.toString();
+        Assertions.assertTrue(json.startsWith("[{"));
+        Assertions.assertThrows(
+                JsonProcessingException.class,
+                () -> ObjectMappers.getObjectMapper(false).readTree(json));
+    }
+
+    private static TransactionalQuoteService createQuoteService(NonPersistentQuoteRepository quoteRepository) {
+        return new TransactionalQuoteService(
+                quoteRepository, new NonPersistentQuoteChangeRepository(quoteRepository), event -> {
+                }, new QuoteDataVersionTracker());
+    }
+
+    /**
+     * Repository whose forEachQuote fails after passing the given number of quotes.
+     */
+    public static class FailingQuoteRepository extends NonPersistentQuoteRepository {
+
+        private final int failAfter;
+
+        public FailingQuoteRepository(int failAfter) {
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public void forEachQuote(Consumer<? super Quote> action) {
+            var count = new AtomicInteger();
+            super.forEachQuote(quote -> {
+                if (count.getAndIncrement() == failAfter) {
+                    throw new QueryTimeoutException("Timeout");
+                }
+                action.accept(quote);
+            });
+        }
+    }
+}
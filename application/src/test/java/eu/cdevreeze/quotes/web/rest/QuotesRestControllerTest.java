@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.web.rest;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.repository.nonpersistent.NonPersistentQuoteChangeRepository;
+import eu.cdevreeze.quotes.repository.nonpersistent.NonPersistentQuoteRepository;
+import eu.cdevreeze.quotes.service.impl.ExecutorBackedAsyncQuoteService;
+import eu.cdevreeze.quotes.service.impl.QuoteDataVersionTracker;
+import eu.cdevreeze.quotes.service.impl.TransactionalQuoteService;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test of the asynchronous quote lookups of QuotesRestController (using a standalone MockMvc), when the queries
+ * take too long. The lookups by subject of the underlying NonPersistentQuoteRepository block until released.
+ *
+ * @author Chris de Vreeze
+ */
+class QuotesRestControllerTest {
+
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    private ExecutorBackedAsyncQuoteService asyncQuoteService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        var quoteRepository = new NonPersistentQuoteRepository() {
+
+            @Override
+            public ImmutableList<Quote> findBySubject(String subject) {
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+                return super.findBySubject(subject);
+            }
+        };
+        var quoteService = new TransactionalQuoteService(
+                quoteRepository, new NonPersistentQuoteChangeRepository(quoteRepository), event -> {
+                }, new QuoteDataVersionTracker());
+        asyncQuoteService = new ExecutorBackedAsyncQuoteService(quoteService, 1, 10, Duration.ofMillis(100), false);
+        mockMvc = MockMvcBuilders
+                .standaloneSetup(new QuotesRestController(quoteService, asyncQuoteService, Optional.empty()))
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        asyncQuoteService.shutdown();
+    }
+
+    @Test
+    void shouldReturnServiceUnavailableIfQueryTimesOut() throws Exception {
+        var mvcResult = mockMvc.perform(get("/quotesBySubject.json").param("subject", "peace"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+                .andExpect(jsonPath("$.detail", Matchers.equalTo("Query timed out")));
+    }
+
+    @Test
+    void shouldReturnQuotesThatDoNotNeedTheBlockedQuery() throws Exception {
+        var mvcResult = mockMvc.perform(get("/quotesByAttributedTo.json").param("attributedTo", "Wim Hof"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].attributedTo", Matchers.equalTo("Wim Hof")));
+    }
+}
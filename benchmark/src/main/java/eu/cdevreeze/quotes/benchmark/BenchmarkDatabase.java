@@ -0,0 +1,85 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.benchmark;
+
+import eu.cdevreeze.quotes.repository.jdbc.JdbcQuoteRepository;
+import eu.cdevreeze.quotes.sampledata.SyntheticQuoteData;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+
+/**
+ * Embedded (in-memory) H2 database in MySQL mode, with the tables of create_tables.sql, for the benchmarks.
+ * This needs no database server (or Docker), at the expense of measuring H2 instead of MySQL. The numbers
+ * are therefore mostly useful to compare implementations with each other.
+ *
+ * @author Chris de Vreeze
+ */
+public final class BenchmarkDatabase {
+
+    // Seed of the generated quotes used by the benchmarks
+    public static final long SEED = 42L;
+
+    private static final String NAME = "quotes-benchmark;MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+
+    /**
+     * JDBC URL of the embedded database (while it exists), as created by the EmbeddedDatabaseBuilder.
+     */
+    public static final String URL = "jdbc:h2:mem:" + NAME + ";DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=false";
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private BenchmarkDatabase() {
+    }
+
+    public static EmbeddedDatabase create() {
+        var database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName(NAME)
+                .build();
+        // H2 has no FULLTEXT indexes, so that index is left out
+        var createTablesScript = readCreateTablesScript().lines()
+                .filter(line -> !line.startsWith("create fulltext index"))
+                .collect(Collectors.joining(System.lineSeparator()));
+        new ResourceDatabasePopulator(new ByteArrayResource(createTablesScript.getBytes(StandardCharsets.UTF_8)))
+                .execute(database);
+        return database;
+    }
+
+    /**
+     * Inserts the given number of generated quotes in batches, using JdbcQuoteRepository.
+     */
+    public static void insertQuotes(EmbeddedDatabase database, SyntheticQuoteData syntheticQuoteData, int numberOfQuotes) {
+        syntheticQuoteData.addQuotes(numberOfQuotes, BATCH_SIZE, new JdbcQuoteRepository(database)::addQuotes);
+    }
+
+    private static String readCreateTablesScript() {
+        try {
+            return new ClassPathResource("create_tables.sql").getContentAsString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
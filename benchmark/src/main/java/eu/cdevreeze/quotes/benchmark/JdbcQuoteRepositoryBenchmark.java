@@ -0,0 +1,144 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.model.QuoteData;
+import eu.cdevreeze.quotes.repository.QuoteRepository;
+import eu.cdevreeze.quotes.repository.jdbc.JdbcQuoteRepository;
+import eu.cdevreeze.quotes.repository.jdbc.JdbcQuoteRepositoryUsingJson;
+import eu.cdevreeze.quotes.repository.jdbc.JdbcQuoteRepositoryUsingOnlyJson;
+import eu.cdevreeze.quotes.sampledata.SyntheticQuoteData;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark comparing the 3 JDBC-based QuoteRepository implementations, against an embedded H2 database
+ * (see {@link BenchmarkDatabase}) filled with 1k, 100k or 1M generated quotes (see {@link SyntheticQuoteData}).
+ * The queried subjects and authors have the same (skewed) distribution as those of the generated quotes.
+ * <p>
+ * Each benchmark is run in throughput mode and in sample time mode, the latter reporting latency percentiles.
+ * For allocation rates, run with the GC profiler ("-prof gc").
+ *
+ * @author Chris de Vreeze
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class JdbcQuoteRepositoryBenchmark {
+
+    private static final QuoteData QUOTE_DATA = new QuoteData(
+            "The quick brown fox jumps over the lazy dog.",
+            "Benchmark author",
+            ImmutableList.of("benchmark", "fox", "dog"));
+
+    @Param({"1000", "100000", "1000000"})
+    public int numberOfQuotes;
+
+    @Param({"JdbcQuoteRepository", "JdbcQuoteRepositoryUsingJson", "JdbcQuoteRepositoryUsingOnlyJson"})
+    public String implementation;
+
+    private final SyntheticQuoteData syntheticQuoteData = new SyntheticQuoteData(BenchmarkDatabase.SEED);
+
+    private EmbeddedDatabase database;
+    private QuoteRepository quoteRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.create();
+        BenchmarkDatabase.insertQuotes(database, syntheticQuoteData, numberOfQuotes);
+
+        quoteRepository = switch (implementation) {
+            case "JdbcQuoteRepository" -> new JdbcQuoteRepository(database);
+            case "JdbcQuoteRepositoryUsingJson" -> new JdbcQuoteRepositoryUsingJson(database);
+            case "JdbcQuoteRepositoryUsingOnlyJson" -> new JdbcQuoteRepositoryUsingOnlyJson(database);
+            default -> throw new IllegalArgumentException("Unknown implementation: " + implementation);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public ImmutableList<Quote> findAllQuotes() {
+        return quoteRepository.findAllQuotes();
+    }
+
+    @Benchmark
+    public ImmutableList<Quote> findBySubject() {
+        return quoteRepository.findBySubject(syntheticQuoteData.sampleSubject(ThreadLocalRandom.current()));
+    }
+
+    @Benchmark
+    public ImmutableList<Quote> findByAttributedTo() {
+        return quoteRepository.findByAttributedTo(syntheticQuoteData.sampleAuthor(ThreadLocalRandom.current()));
+    }
+
+    @Benchmark
+    public Quote addQuote(AddedQuotes addedQuotes) {
+        var quote = quoteRepository.addQuote(QUOTE_DATA);
+        addedQuotes.quoteIds.add(quote.id());
+        return quote;
+    }
+
+    @Benchmark
+    public void deleteQuote(QuoteToDelete quoteToDelete) {
+        quoteRepository.deleteQuote(quoteToDelete.quoteId);
+    }
+
+    /**
+     * The quotes added by the addQuote benchmark, which are deleted after each iteration, so that the
+     * database size stays (roughly) the same.
+     */
+    @State(Scope.Thread)
+    public static class AddedQuotes {
+
+        private final List<Long> quoteIds = new ArrayList<>();
+
+        @TearDown(Level.Iteration)
+        public void deleteAddedQuotes(JdbcQuoteRepositoryBenchmark benchmark) {
+            quoteIds.forEach(benchmark.quoteRepository::deleteQuote);
+            quoteIds.clear();
+        }
+    }
+
+    /**
+     * The quote to be deleted by the deleteQuote benchmark, added before each invocation. Invocation-level
+     * setup has some overhead of its own, but that is small compared to a database round trip.
+     */
+    @State(Scope.Thread)
+    public static class QuoteToDelete {
+
+        private long quoteId;
+
+        @Setup(Level.Invocation)
+        public void addQuote(JdbcQuoteRepositoryBenchmark benchmark) {
+            quoteId = benchmark.quoteRepository.addQuote(QUOTE_DATA).id();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CountingOutputStream;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import eu.cdevreeze.quotes.internal.utils.ObjectMappers;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.sampledata.SyntheticQuoteData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JMH benchmark comparing compact and pretty-printed JSON output of a large /quotes.json response body,
+ * that is, of 10k or 100k generated quotes. The JSON is written to a byte-counting null output stream, so
+ * only serialization is measured. The JSON sizes (in bytes) are printed during setup.
+ *
+ * @author Chris de Vreeze
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JsonOutputBenchmark {
+
+    private static final ObjectWriter COMPACT_WRITER = ObjectMappers.getObjectMapper(false).writer();
+    private static final ObjectWriter PRETTY_WRITER = ObjectMappers.getObjectMapper(true).writer();
+
+    @Param({"10000", "100000"})
+    public int numberOfQuotes;
+
+    private ImmutableList<Quote> quotes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        var nextQuoteId = new AtomicLong(1);
+        quotes = new SyntheticQuoteData(BenchmarkDatabase.SEED).quotes(numberOfQuotes)
+                .map(qt -> new Quote(nextQuoteId.getAndIncrement(), qt.text(), qt.attributedTo(), qt.subjects()))
+                .collect(ImmutableList.toImmutableList());
+
+        System.out.printf(
+                "%nJSON size of %d quotes: compact %d bytes, pretty-printed %d bytes%n",
+                numberOfQuotes,
+                write(COMPACT_WRITER),
+                write(PRETTY_WRITER));
+    }
+
+    @Benchmark
+    public long writeCompactJson() throws IOException {
+        return write(COMPACT_WRITER);
+    }
+
+    @Benchmark
+    public long writePrettyPrintedJson() throws IOException {
+        return write(PRETTY_WRITER);
+    }
+
+    private long write(ObjectWriter objectWriter) throws IOException {
+        var outputStream = new CountingOutputStream(OutputStream.nullOutputStream());
+        objectWriter.writeValue(outputStream, quotes);
+        return outputStream.getCount();
+    }
+}
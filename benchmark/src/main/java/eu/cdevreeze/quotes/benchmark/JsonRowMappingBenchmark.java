@@ -0,0 +1,106 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.cdevreeze.quotes.internal.utils.ObjectMappers;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.sampledata.SyntheticQuoteData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JMH microbenchmark of the per-row cost of the JSON deserialization done by the JSON-based JDBC
+ * QuoteRepository implementations. It compares the former approach of creating an ObjectMapper per row
+ * (or per query) with the shared ObjectReaders of {@link ObjectMappers}. The JSON rows are those of
+ * generated quotes, without any database access.
+ * <p>
+ * For allocation rates, run with the GC profiler ("-prof gc").
+ *
+ * @author Chris de Vreeze
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JsonRowMappingBenchmark {
+
+    private static final int NUMBER_OF_ROWS = 1024;
+
+    private final String[] subjectsJsonRows = new String[NUMBER_OF_ROWS];
+    private final String[] quoteJsonRows = new String[NUMBER_OF_ROWS];
+
+    @Setup(Level.Trial)
+    public void setUp() throws JsonProcessingException {
+        var objectMapper = ObjectMappers.getObjectMapper(false);
+        var nextQuoteId = new AtomicLong(1);
+        var quotes = new SyntheticQuoteData(BenchmarkDatabase.SEED).quotes(NUMBER_OF_ROWS)
+                .map(qt -> new Quote(nextQuoteId.getAndIncrement(), qt.text(), qt.attributedTo(), qt.subjects()))
+                .toList();
+
+        for (int i = 0; i < NUMBER_OF_ROWS; i++) {
+            subjectsJsonRows[i] = objectMapper.writeValueAsString(quotes.get(i).subjects());
+            quoteJsonRows[i] = objectMapper.writeValueAsString(quotes.get(i));
+        }
+    }
+
+    /**
+     * Former approach of JdbcQuoteRepositoryUsingJson.
+     */
+    @Benchmark
+    public String[] subjectsWithNewObjectMapper(RowIndex rowIndex) throws JsonProcessingException {
+        return new ObjectMapper().readValue(subjectsJsonRows[rowIndex.next()], String[].class);
+    }
+
+    @Benchmark
+    public String[] subjectsWithSharedReader(RowIndex rowIndex) throws JsonProcessingException {
+        return ObjectMappers.getStringArrayReader().readValue(subjectsJsonRows[rowIndex.next()]);
+    }
+
+    /**
+     * Former approach of JdbcQuoteRepositoryUsingOnlyJson, which created an ObjectMapper per query.
+     * For queries returning only a few rows this is (almost) the same as creating one per row.
+     */
+    @Benchmark
+    public Quote quoteWithNewObjectMapper(RowIndex rowIndex) throws JsonProcessingException {
+        return ObjectMappers.getObjectMapper(false).readValue(quoteJsonRows[rowIndex.next()], Quote.class);
+    }
+
+    @Benchmark
+    public Quote quoteWithSharedReader(RowIndex rowIndex) throws JsonProcessingException {
+        return ObjectMappers.getQuoteReader().readValue(quoteJsonRows[rowIndex.next()]);
+    }
+
+    /**
+     * Cycles through the JSON rows, so that not the same row is deserialized over and over again.
+     */
+    @State(Scope.Thread)
+    public static class RowIndex {
+
+        private int index;
+
+        public int next() {
+            index = (index + 1) % NUMBER_OF_ROWS;
+            return index;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import eu.cdevreeze.quotes.model.Quote;
+import eu.cdevreeze.quotes.model.QuoteData;
+import eu.cdevreeze.quotes.repository.index.QuoteIndex;
+import eu.cdevreeze.quotes.sampledata.SyntheticQuoteData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JMH benchmark of the in-memory QuoteIndex (as used by the caching QuoteRepository), with 1k, 100k or 1M
+ * generated quotes. This includes full-text search, which cannot be benchmarked against H2.
+ *
+ * @author Chris de Vreeze
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class QuoteIndexBenchmark {
+
+    private static final int ADDED_QUOTES = 1000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int numberOfQuotes;
+
+    private final SyntheticQuoteData syntheticQuoteData = new SyntheticQuoteData(BenchmarkDatabase.SEED);
+
+    private QuoteIndex quoteIndex;
+    private ImmutableList<Quote> addedQuotes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var nextQuoteId = new AtomicLong(1);
+        quoteIndex = QuoteIndex.of(syntheticQuoteData.quotes(numberOfQuotes)
+                .map(qt -> toQuote(nextQuoteId.getAndIncrement(), qt))
+                .collect(ImmutableList.toImmutableList()));
+        addedQuotes = new SyntheticQuoteData(BenchmarkDatabase.SEED + 1).quotes(ADDED_QUOTES)
+                .map(qt -> toQuote(nextQuoteId.getAndIncrement(), qt))
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    @Benchmark
+    public ImmutableList<Quote> findBySubject() {
+        return quoteIndex.findBySubject(syntheticQuoteData.sampleSubject(ThreadLocalRandom.current()));
+    }
+
+    @Benchmark
+    public ImmutableList<Quote> findByAttributedTo() {
+        return quoteIndex.findByAttributedTo(syntheticQuoteData.sampleAuthor(ThreadLocalRandom.current()));
+    }
+
+    @Benchmark
+    public Optional<Quote> findRandomQuote() {
+        return quoteIndex.findRandomQuote();
+    }
+
+    @Benchmark
+    public ImmutableList<Quote> searchQuotes() {
+        var random = ThreadLocalRandom.current();
+        return quoteIndex.searchQuotes(syntheticQuoteData.sampleWord(random) + " " + syntheticQuoteData.sampleWord(random), 20);
+    }
+
+    /**
+     * Copy-on-write update of the index with one quote. The result is not kept, so each invocation updates the same
+     * index. This costs O(n), because the index maps are copied as a whole.
+     */
+    @Benchmark
+    public QuoteIndex withQuote() {
+        return quoteIndex.withQuote(new Quote(
+                numberOfQuotes + 1,
+                "The quick brown fox jumps over the lazy dog.",
+                "Benchmark author",
+                ImmutableList.of("benchmark", "fox", "dog")));
+    }
+
+    /**
+     * Copy-on-write update of the index with 1000 quotes at once, like the caching QuoteRepository applies a series
+     * of committed writes. Compared to 1000 invocations of withQuote, this shows the gain of batching updates.
+     */
+    @Benchmark
+    public QuoteIndex withChanges() {
+        return quoteIndex.withChanges(addedQuotes, ImmutableSet.of());
+    }
+
+    private static Quote toQuote(long quoteId, QuoteData quoteData) {
+        return new Quote(quoteId, quoteData.text(), quoteData.attributedTo(), quoteData.subjects());
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.benchmark;
+
+import eu.cdevreeze.quotes.QuotesApplication;
+import eu.cdevreeze.quotes.sampledata.SyntheticQuoteData;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * JMH benchmark comparing the throughput of the running web application with platform threads and with virtual
+ * threads ("spring.threads.virtual.enabled"), for 1000 concurrent HTTP connections. Each benchmark invocation
+ * sends 1000 concurrent requests for a page of quotes, and waits for all responses. Hence, the number of requests
+ * per second is 1000 divided by the reported average time.
+ * <p>
+ * The database is the embedded H2 database, which answers far more quickly than a database server across the
+ * network. To keep the request threads blocked in JDBC calls like in production, each statement execution
+ * is delayed by the given database latency, while holding the pooled connection.
+ * <p>
+ * With platform threads, at most 200 requests (the Tomcat default maximum number of threads) are handled
+ * concurrently, whereas with virtual threads all requests are. Either way the Hikari connection pool bounds
+ * the number of concurrent database calls, which is why both pool sizes are measured: a pool that is smaller
+ * than the platform thread pool makes virtual threads useless. The page of quotes is looked up asynchronously,
+ * with as many concurrent lookups as pooled connections, on virtual threads or on a pool of platform threads.
+ * <p>
+ * The forked JVM reports virtual threads pinned to their carrier thread ("-Djdk.tracePinnedThreads=short").
+ * Note that H2 may show up there, unlike the MySQL driver, which is the one used in production.
+ *
+ * @author Chris de Vreeze
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djdk.tracePinnedThreads=short")
+public class VirtualThreadsBenchmark {
+
+    private static final int NUMBER_OF_QUOTES = 10_000;
+    private static final int CONCURRENT_REQUESTS = 1000;
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    @Param({"20", "400"})
+    public int connectionPoolSize;
+
+    @Param({"20"})
+    public int databaseLatencyMillis;
+
+    private EmbeddedDatabase database;
+    private ConfigurableApplicationContext applicationContext;
+    private HttpClient httpClient;
+    private HttpRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.create();
+        BenchmarkDatabase.insertQuotes(database, new SyntheticQuoteData(BenchmarkDatabase.SEED), NUMBER_OF_QUOTES);
+
+        // Command line arguments, because they override the application.properties of the application
+        applicationContext = new SpringApplicationBuilder(QuotesApplication.class)
+                .initializers(ctx -> ctx.getBeanFactory().addBeanPostProcessor(new DatabaseLatencyInjector(databaseLatencyMillis)))
+                .run(
+                        "--server.port=0",
+                        "--server.tomcat.accept-count=" + CONCURRENT_REQUESTS,
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--spring.datasource.url=" + BenchmarkDatabase.URL,
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.hikari.maximum-pool-size=" + connectionPoolSize,
+                        "--implementation.asyncQuoteService.threads=" + connectionPoolSize,
+                        "--spring.datasource.hikari.connection-timeout=30000",
+                        "--implementation.quotesJsonSnapshot=false",
+                        "--logging.level.root=WARN"
+                );
+        var port = ((WebServerApplicationContext) applicationContext).getWebServer().getPort();
+
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder(URI.create(String.format("http://localhost:%d/quotes.json?after=100&limit=10", port)))
+                .GET()
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        httpClient.close();
+        applicationContext.close();
+        database.shutdown();
+    }
+
+    @Benchmark
+    public long sendConcurrentRequests() {
+        var responses = IntStream.range(0, CONCURRENT_REQUESTS)
+                .mapToObj(i -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()))
+                .toList();
+        CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).join();
+
+        long numberOfBytes = 0;
+        for (var response : responses) {
+            if (response.join().statusCode() != 200) {
+                throw new IllegalStateException("Unexpected response status " + response.join().statusCode());
+            }
+            numberOfBytes += response.join().body().length;
+        }
+        return numberOfBytes;
+    }
+
+    /**
+     * Wraps the DataSource in a DataSource whose statements sleep (in the calling thread) before being executed.
+     */
+    private record DatabaseLatencyInjector(int latencyMillis) implements BeanPostProcessor {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof DataSource dataSource && !(bean instanceof LatencyInjectingDataSource)) {
+                return new LatencyInjectingDataSource(dataSource, latencyMillis);
+            }
+            return bean;
+        }
+    }
+
+    private static final class LatencyInjectingDataSource extends DelegatingDataSource implements AutoCloseable {
+
+        private final int latencyMillis;
+
+        LatencyInjectingDataSource(DataSource targetDataSource, int latencyMillis) {
+            super(targetDataSource);
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return delayStatements(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return delayStatements(super.getConnection(username, password));
+        }
+
+        /**
+         * Closes the connection pool, because Spring (inferring the "close" destroy method) only sees this wrapper.
+         */
+        @Override
+        public void close() throws Exception {
+            if (obtainTargetDataSource() instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+
+        private Connection delayStatements(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        var result = invoke(connection, method, args);
+                        return (result instanceof Statement statement) ? delayExecution(statement) : result;
+                    });
+        }
+
+        private Statement delayExecution(Statement statement) {
+            return (Statement) Proxy.newProxyInstance(
+                    Statement.class.getClassLoader(),
+                    new Class<?>[]{statementInterface(statement)},
+                    (proxy, method, args) -> {
+                        if (method.getName().startsWith("execute")) {
+                            Thread.sleep(latencyMillis);
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private static Class<?> statementInterface(Statement statement) {
+            if (statement instanceof CallableStatement) {
+                return CallableStatement.class;
+            }
+            return (statement instanceof PreparedStatement) ? PreparedStatement.class : Statement.class;
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -22,19 +22,34 @@ import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.DefaultUriBuilderFactory;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.List;
 
 /**
  * Non-idiomatic Spring Configuration for system properties "scheme", "hostName" and "port",
  * and beans for HttpMessageConverter, Jackson ObjectMapper and RestClient.
+ * <p>
+ * The HTTP transport of the RestClient is a ClientHttpRequestFactory bean, chosen by property "restclient.transport":
+ * <ul>
+ *     <li>"jdk" (the default): the JDK HttpClient, which keeps idle connections open for reuse, and which can use
+ *     HTTP/2, also over plain HTTP ("h2c", if the server supports it), where all requests share one connection</li>
+ *     <li>"simple": HttpURLConnection, with its own (small) keep-alive cache, and only HTTP/1.1</li>
+ * </ul>
+ * Both have a connect timeout and a per-request (response) timeout, so that a client program never hangs on one
+ * request. Idempotent requests are retried a bounded number of times with backoff (see RetryingRequestInterceptor).
  *
  * @author Chris de Vreeze
  */
@@ -55,16 +70,50 @@ public class ClientConfig {
         return new MappingJackson2HttpMessageConverter(objectMapper());
     }
 
+    @Bean
+    @ConditionalOnProperty(name = "restclient.transport", havingValue = "jdk", matchIfMissing = true)
+    public ClientHttpRequestFactory jdkClientHttpRequestFactory(
+            @Value("${restclient.httpVersion:HTTP_1_1}") HttpClient.Version httpVersion,
+            @Value("${restclient.connectTimeout:5s}") Duration connectTimeout,
+            @Value("${restclient.requestTimeout:60s}") Duration requestTimeout
+    ) {
+        var httpClient = HttpClient.newBuilder()
+                .version(httpVersion)
+                .connectTimeout(connectTimeout)
+                .build();
+        var requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(requestTimeout);
+        return requestFactory;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "restclient.transport", havingValue = "simple")
+    public ClientHttpRequestFactory simpleClientHttpRequestFactory(
+            @Value("${restclient.connectTimeout:5s}") Duration connectTimeout,
+            @Value("${restclient.requestTimeout:60s}") Duration requestTimeout
+    ) {
+        var requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeout);
+        requestFactory.setReadTimeout(requestTimeout);
+        return requestFactory;
+    }
+
     @Bean
     public RestClient restClient(
             @Value("${restclient.scheme}") String scheme,
             @Value("${restclient.host}") String host,
-            @Value("${restclient.port}") int port
+            @Value("${restclient.port}") int port,
+            ClientHttpRequestFactory requestFactory,
+            @Value("${restclient.retry.maxAttempts:3}") int maxAttempts,
+            @Value("${restclient.retry.initialBackoff:200ms}") Duration initialBackoff,
+            @Value("${restclient.retry.maxBackoff:2s}") Duration maxBackoff
     ) {
         var baseUrl = new DefaultUriBuilderFactory().builder()
                 .scheme(scheme).host(host).port(port).toUriString();
 
         var restTemplate = new RestTemplate(List.of(httpMessageConverter()));
+        restTemplate.setRequestFactory(requestFactory);
+        restTemplate.getInterceptors().add(new RetryingRequestInterceptor(maxAttempts, initialBackoff, maxBackoff));
 
         return RestClient.builder(restTemplate).baseUrl(baseUrl).build();
     }
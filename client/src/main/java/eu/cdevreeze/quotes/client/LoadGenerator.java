@@ -0,0 +1,375 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import eu.cdevreeze.quotes.client.model.Quote;
+import eu.cdevreeze.quotes.client.model.QuoteData;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestClient;
+
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Client program to put load on a running quotes application via the HTTP API, reporting latency percentiles
+ * and throughput per operation. The operations are picked at random, according to a weighted mix
+ * (property "loadgenerator.mix"), from: "quotes" (all quotes), "randomQuote", "quotesBySubject", "addQuote" and
+ * "deleteQuote". The latter only deletes quotes added by the same run, so a run leaves at most the added quotes
+ * that have not been deleted.
+ * <p>
+ * If property "loadgenerator.rate" is positive, the load is open-loop: requests are started at that fixed rate
+ * (per second), each from its own virtual thread, regardless of how many earlier requests are still pending.
+ * Latency is measured from the intended start time of a request, so a stalled server (or client) shows up as
+ * latency of all requests that should have been sent in the meantime, instead of being hidden by sending fewer
+ * requests ("coordinated omission"). Otherwise the load is closed-loop: "loadgenerator.concurrency" threads
+ * each send the next request as soon as the previous one has completed. That measures the maximum throughput,
+ * but its latencies suffer from coordinated omission.
+ * <p>
+ * Requests started during the warmup period (property "loadgenerator.warmup") are not measured. Latencies of
+ * successful requests are recorded in HdrHistogram histograms. Failed requests are only counted. Failed requests
+ * are not retried (see {@link RetryingRequestInterceptor}), because retries would hide the failures, add load
+ * that is not part of the configured rate, and inflate the measured latencies.
+ * <p>
+ * Run with:
+ * <pre>
+ * cd client
+ * ../mvnw spring-boot:run -Pload
+ * cd ..
+ * </pre>
+ *
+ * @author Chris de Vreeze
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@Import(ClientConfig.class)
+public class LoadGenerator implements CommandLineRunner {
+
+    public enum Operation {
+        QUOTES("quotes"),
+        RANDOM_QUOTE("randomQuote"),
+        QUOTES_BY_SUBJECT("quotesBySubject"),
+        ADD_QUOTE("addQuote"),
+        DELETE_QUOTE("deleteQuote");
+
+        private final String name;
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public static Operation fromName(String name) {
+            return Arrays.stream(values())
+                    .filter(op -> op.name.equals(name))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException(String.format("Unknown operation: '%s'", name)));
+        }
+    }
+
+    /**
+     * Measurements of one operation: latencies (in nanoseconds) of the successful requests, and the numbers of
+     * failed requests and skipped requests (deletions without any added quote to delete).
+     */
+    public record OperationStats(Histogram latencies, LongAdder errors, LongAdder skipped) {
+
+        public OperationStats() {
+            this(new ConcurrentHistogram(3), new LongAdder(), new LongAdder());
+        }
+    }
+
+    private static final String ATTRIBUTED_TO = "Quotes Load Generator";
+
+    private final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private final RestClient restClient;
+    private final ImmutableMap<Operation, Integer> mix;
+    private final double rate;
+    private final int concurrency;
+    private final Duration duration;
+    private final Duration warmup;
+    private final ImmutableList<String> subjects;
+
+    private final ImmutableList<Operation> operations;
+    private final int[] cumulativeWeights;
+    private final ConcurrentLinkedQueue<Long> addedQuoteIds = new ConcurrentLinkedQueue<>();
+
+    public LoadGenerator(
+            RestClient restClient,
+            @Value("${loadgenerator.mix:quotes=1,randomQuote=40,quotesBySubject=40,addQuote=10,deleteQuote=9}") String mix,
+            @Value("${loadgenerator.rate:100}") double rate,
+            @Value("${loadgenerator.concurrency:16}") int concurrency,
+            @Value("${loadgenerator.duration:60s}") Duration duration,
+            @Value("${loadgenerator.warmup:10s}") Duration warmup,
+            @Value("${loadgenerator.subjects:liberty,war,inner strength,peace,politics}") List<String> subjects
+    ) {
+        Preconditions.checkArgument(rate > 0 || concurrency > 0);
+        Preconditions.checkArgument(duration.isPositive());
+        Preconditions.checkArgument(!warmup.isNegative());
+        Preconditions.checkArgument(!subjects.isEmpty());
+
+        this.restClient = restClient.mutate()
+                .requestInterceptors(interceptors -> interceptors.removeIf(RetryingRequestInterceptor.class::isInstance))
+                .build();
+        this.mix = parseMix(mix);
+        this.rate = rate;
+        this.concurrency = concurrency;
+        this.duration = duration;
+        this.warmup = warmup;
+        this.subjects = ImmutableList.copyOf(subjects);
+
+        this.operations = this.mix.keySet().asList();
+        this.cumulativeWeights = new int[operations.size()];
+        var totalWeight = 0;
+        for (int i = 0; i < operations.size(); i++) {
+            totalWeight += this.mix.get(operations.get(i));
+            cumulativeWeights[i] = totalWeight;
+        }
+        Preconditions.checkArgument(totalWeight > 0, "The operation mix has no positive weights");
+    }
+
+    /**
+     * Runs the load, and returns the measurements per operation (of the operations in the mix).
+     */
+    public ImmutableMap<Operation, OperationStats> generateLoad() {
+        logger.info(String.format(
+                "Generating load for %s (after %s warmup): %s, mix %s",
+                duration,
+                warmup,
+                rate > 0 ? String.format("%.1f requests/s (open-loop)", rate) : concurrency + " threads (closed-loop)",
+                mix.entrySet().stream()
+                        .map(kv -> kv.getKey().getName() + "=" + kv.getValue())
+                        .collect(Collectors.joining(","))));
+
+        var stats = ImmutableMap.copyOf(Maps.toMap(operations, op -> new OperationStats()));
+
+        var startNanos = System.nanoTime();
+        var measurementStartNanos = startNanos + warmup.toNanos();
+        var endNanos = measurementStartNanos + duration.toNanos();
+
+        // Closing the executor waits for the pending requests
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            if (rate > 0) {
+                var intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+                for (long i = 0; ; i++) {
+                    var intendedStartNanos = startNanos + i * intervalNanos;
+                    if (intendedStartNanos - endNanos >= 0) {
+                        break;
+                    }
+                    parkUntil(intendedStartNanos);
+                    var operation = nextOperation();
+                    executor.execute(() -> execute(operation, intendedStartNanos, measurementStartNanos, stats));
+                }
+            } else {
+                IntStream.range(0, concurrency).forEach(i -> executor.execute(() -> {
+                    for (long now = System.nanoTime(); now - endNanos < 0; now = System.nanoTime()) {
+                        execute(nextOperation(), now, measurementStartNanos, stats);
+                    }
+                }));
+            }
+        }
+
+        return stats;
+    }
+
+    @Override
+    public void run(String... args) {
+        var stats = generateLoad();
+
+        System.out.println(report(stats, duration));
+    }
+
+    /**
+     * Returns a table with the number of measured requests, the throughput and latency percentiles (in milliseconds)
+     * per operation.
+     */
+    public static String report(ImmutableMap<Operation, OperationStats> stats, Duration duration) {
+        var seconds = duration.toNanos() / 1_000_000_000.0;
+        var sb = new StringBuilder();
+        sb.append(String.format(
+                "%-16s %8s %7s %7s %8s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "skipped", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        stats.forEach((operation, operationStats) -> {
+            var latencies = operationStats.latencies();
+            sb.append(String.format(
+                    "%-16s %8d %7d %7d %8.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    operation.getName(),
+                    latencies.getTotalCount(),
+                    operationStats.errors().sum(),
+                    operationStats.skipped().sum(),
+                    latencies.getTotalCount() / seconds,
+                    millis(latencies.getValueAtPercentile(50)),
+                    millis(latencies.getValueAtPercentile(90)),
+                    millis(latencies.getValueAtPercentile(99)),
+                    millis(latencies.getValueAtPercentile(99.9)),
+                    millis(latencies.getMaxValue())));
+        });
+        var total = stats.values().stream().mapToLong(s -> s.latencies().getTotalCount()).sum();
+        sb.append(String.format("%-16s %8d %7s %7s %8.1f%n", "total", total, "", "", total / seconds));
+        return sb.toString();
+    }
+
+    private void execute(
+            Operation operation,
+            long intendedStartNanos,
+            long measurementStartNanos,
+            ImmutableMap<Operation, OperationStats> stats
+    ) {
+        var operationStats = Objects.requireNonNull(stats.get(operation));
+        boolean performed;
+        try {
+            performed = perform(operation);
+        } catch (RuntimeException e) {
+            logger.debug(String.format("Operation %s failed", operation.getName()), e);
+            if (intendedStartNanos - measurementStartNanos >= 0) {
+                operationStats.errors().increment();
+            }
+            return;
+        }
+
+        if (intendedStartNanos - measurementStartNanos >= 0) {
+            if (performed) {
+                operationStats.latencies().recordValue(System.nanoTime() - intendedStartNanos);
+            } else {
+                operationStats.skipped().increment();
+            }
+        }
+    }
+
+    /**
+     * Performs the operation, returning false if it has been skipped. Failures are thrown as exceptions.
+     */
+    private boolean perform(Operation operation) {
+        var random = ThreadLocalRandom.current();
+        switch (operation) {
+            case QUOTES -> get("/quotes.json");
+            case RANDOM_QUOTE -> get("/randomQuote.json");
+            case QUOTES_BY_SUBJECT -> get("/quotesBySubject.json?subject={subject}", randomSubject(random));
+            case ADD_QUOTE -> {
+                var quoteData = new QuoteData(
+                        String.format("Load test quote %s", UUID.randomUUID()),
+                        ATTRIBUTED_TO,
+                        ImmutableList.of(randomSubject(random)));
+                var quote = restClient.post()
+                        .uri("/quote")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .body(quoteData)
+                        .retrieve()
+                        .body(Quote.class);
+                addedQuoteIds.add(Objects.requireNonNull(quote).id());
+            }
+            case DELETE_QUOTE -> {
+                var quoteId = addedQuoteIds.poll();
+                if (quoteId == null) {
+                    return false;
+                }
+                restClient.delete().uri("/quotes/{quoteId}", quoteId).retrieve().toBodilessEntity();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends a GET request, reading (and discarding) the complete response body, so the connection can be reused.
+     */
+    private void get(String uriTemplate, Object... uriVariables) {
+        restClient.get()
+                .uri(uriTemplate, uriVariables)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange((request, response) -> {
+                    try (var responseBody = response.getBody()) {
+                        responseBody.transferTo(OutputStream.nullOutputStream());
+                    }
+                    if (!response.getStatusCode().is2xxSuccessful()) {
+                        throw new IllegalStateException(
+                                String.format("GET %s failed with status code %s", request.getURI(), response.getStatusCode()));
+                    }
+                    return null;
+                }, true);
+    }
+
+    private Operation nextOperation() {
+        var value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return operations.get(i);
+            }
+        }
+        throw new IllegalStateException("Weighted operation selection failed");
+    }
+
+    private String randomSubject(ThreadLocalRandom random) {
+        return subjects.get(random.nextInt(subjects.size()));
+    }
+
+    private static void parkUntil(long deadlineNanos) {
+        for (long remaining = deadlineNanos - System.nanoTime(); remaining > 0; remaining = deadlineNanos - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static ImmutableMap<Operation, Integer> parseMix(String mix) {
+        var weights = Splitter.on(',').trimResults().omitEmptyStrings().withKeyValueSeparator('=').split(mix);
+        var result = ImmutableMap.<Operation, Integer>builder();
+        weights.forEach((name, weight) -> {
+            var w = Integer.parseInt(weight.trim());
+            Preconditions.checkArgument(w >= 0, "Negative weight of operation '%s'", name);
+            if (w > 0) {
+                result.put(Operation.fromName(name.trim()), w);
+            }
+        });
+        return result.build();
+    }
+
+    public static void main(String[] args) {
+        SpringApplication.run(LoadGenerator.class, args);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.client;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe aggregated progress logging of a client program processing many quotes: the number of quotes
+ * processed so far and the throughput, at most once per reporting interval, instead of one log line per
+ * quote (or response payload).
+ *
+ * @author Chris de Vreeze
+ */
+final class ProgressLogger {
+
+    private static final Duration DEFAULT_REPORTING_INTERVAL = Duration.ofSeconds(1);
+
+    private final Logger logger;
+    private final String activity;
+    private final long expectedTotal;
+    private final long reportingIntervalNanos;
+    private final long startNanos;
+    private final AtomicLong processed = new AtomicLong(0);
+    private final AtomicLong lastReportNanos;
+
+    /**
+     * Creates a ProgressLogger for the given activity (such as "Added") of the given expected number of quotes,
+     * or -1 if that number is unknown. The clock starts now.
+     */
+    ProgressLogger(Logger logger, String activity, long expectedTotal) {
+        this.logger = logger;
+        this.activity = activity;
+        this.expectedTotal = expectedTotal;
+        this.reportingIntervalNanos = DEFAULT_REPORTING_INTERVAL.toNanos();
+        this.startNanos = System.nanoTime();
+        this.lastReportNanos = new AtomicLong(startNanos);
+    }
+
+    /**
+     * Registers the given number of processed quotes, logging the progress if the reporting interval has passed.
+     */
+    void quotesProcessed(long count) {
+        var total = processed.addAndGet(count);
+        var now = System.nanoTime();
+        var lastReport = lastReportNanos.get();
+        // Only one of the threads that pass the interval at the same time logs
+        if (now - lastReport >= reportingIntervalNanos && lastReportNanos.compareAndSet(lastReport, now)) {
+            log(total, now);
+        }
+    }
+
+    /**
+     * Logs the final progress, and returns the number of processed quotes.
+     */
+    long done() {
+        var total = processed.get();
+        log(total, System.nanoTime());
+        return total;
+    }
+
+    private void log(long total, long now) {
+        var elapsedSeconds = Math.max(now - startNanos, 1L) / 1_000_000_000.0;
+        var throughput = total / elapsedSeconds;
+        if (expectedTotal >= 0) {
+            logger.info(String.format(
+                    "%s %d of %d quotes in %.1f s (%.0f quotes/s)", activity, total, expectedTotal, elapsedSeconds, throughput));
+        } else {
+            logger.info(String.format("%s %d quotes in %.1f s (%.0f quotes/s)", activity, total, elapsedSeconds, throughput));
+        }
+    }
+}
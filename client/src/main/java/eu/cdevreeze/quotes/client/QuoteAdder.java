@@ -16,18 +16,22 @@
 
 package eu.cdevreeze.quotes.client;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.Futures;
 import eu.cdevreeze.quotes.client.model.Quote;
 import eu.cdevreeze.quotes.client.model.QuoteData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.RestClient;
@@ -35,13 +39,21 @@ import org.springframework.web.client.RestClient;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * Client program to add quotes via the HTTP API. The program input is a file path where the file
- * contains a collection of QuoteData instances as JSON string.
+ * contains a collection of QuoteData instances as JSON array, or as NDJSON (one JSON object per line).
+ * The file is parsed incrementally, and the quotes are sent in batches (see property "quoteadder.batchSize")
+ * while parsing.
+ * <p>
+ * The batches are sent concurrently, each from its own virtual thread, with at most "quoteadder.maxConcurrentRequests"
+ * requests in flight (1 means sequentially). Each request is subject to the timeouts of the RestClient
+ * (see ClientConfig). Instead of logging each response, the progress and throughput are logged periodically.
  * <p>
  * For some background on the use of RestClient in the implementation, compared to alternatives,
  * see <a href="https://digma.ai/restclient-vs-webclient-vs-resttemplate/">restclient-vs-webclient-vs-resttemplate</a>.
@@ -57,18 +69,125 @@ public class QuoteAdder implements CommandLineRunner {
 
     private final RestClient restClient;
     private final ObjectMapper objectMapper;
-
-    public QuoteAdder(RestClient restClient, ObjectMapper objectMapper) {
+    private final int batchSize;
+    private final int maxConcurrentRequests;
+
+    public QuoteAdder(
+            RestClient restClient,
+            ObjectMapper objectMapper,
+            @Value("${quoteadder.batchSize:1000}") int batchSize,
+            @Value("${quoteadder.maxConcurrentRequests:4}") int maxConcurrentRequests
+    ) {
+        Preconditions.checkArgument(batchSize > 0);
+        Preconditions.checkArgument(maxConcurrentRequests > 0);
         this.restClient = restClient;
         this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.maxConcurrentRequests = maxConcurrentRequests;
     }
 
+    /**
+     * Adds the given quotes in batches, each batch being sent in one HTTP request, and returns the added quotes
+     * in the same order as the input. See {@link #addQuotes(Iterator, long, Consumer)}.
+     */
     public List<Quote> addQuotes(List<QuoteData> quoteDataRecords) {
-        return quoteDataRecords.stream().map(this::addQuote).toList();
+        List<Quote> quotes = new ArrayList<>(quoteDataRecords.size());
+        addQuotes(quoteDataRecords.iterator(), quoteDataRecords.size(), quotes::addAll);
+        return Collections.unmodifiableList(quotes);
+    }
+
+    /**
+     * Adds the quotes of the given iterator in batches, each batch being sent in one HTTP request, passing the added
+     * quotes per batch to the given consumer, in the same order as the input. Returns the number of added quotes.
+     * The expected number of quotes is only used for progress logging, and may be -1 if unknown.
+     * <p>
+     * The quotes are taken from the iterator only when needed for the next batch, so a lazy iterator (such as the one
+     * returned by {@link #readQuoteData(Path)}) is consumed while sending, without holding all quotes in memory.
+     * The batches are sent concurrently, with at most maxConcurrentRequests batches sent but not yet passed to the
+     * consumer. As soon as a request or the iterator has failed, no more batches are sent, even if the failed request
+     * is not the oldest one in flight, and an exception is thrown once the requests in flight are done. Note that the
+     * quotes of the successful batches have been added by then.
+     */
+    public long addQuotes(
+            Iterator<QuoteData> quoteDataRecords,
+            long expectedNumberOfQuotes,
+            Consumer<? super List<Quote>> addedQuotesConsumer
+    ) {
+        var progressLogger = new ProgressLogger(logger, "Added", expectedNumberOfQuotes);
+        var batches = Iterators.partition(quoteDataRecords, batchSize);
+        // The batches sent, in input order, and not yet passed to the consumer
+        Deque<Future<List<Quote>>> pendingBatches = new ArrayDeque<>();
+        // Set by the first failed request, which may not be the oldest pending batch
+        var requestFailed = new AtomicBoolean(false);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (batches.hasNext()) {
+                if (pendingBatches.size() == maxConcurrentRequests) {
+                    addedQuotesConsumer.accept(awaitBatch(pendingBatches.removeFirst()));
+                }
+                if (requestFailed.get()) {
+                    // Awaiting the pending batches below throws the exception of the failed request
+                    break;
+                }
+                var batch = batches.next();
+                pendingBatches.addLast(executor.submit(() -> {
+                    try {
+                        var quotes = addQuoteBatch(batch);
+                        progressLogger.quotesProcessed(quotes.size());
+                        return quotes;
+                    } catch (RuntimeException e) {
+                        requestFailed.set(true);
+                        throw e;
+                    }
+                }));
+            }
+            while (!pendingBatches.isEmpty()) {
+                addedQuotesConsumer.accept(awaitBatch(pendingBatches.removeFirst()));
+            }
+        } catch (RuntimeException e) {
+            // Closing the executor has waited for the requests in flight
+            progressLogger.done();
+            throw new IllegalStateException("Adding quotes failed, so not all quotes have been added", e);
+        }
+        return progressLogger.done();
+    }
+
+    /**
+     * Returns a lazy iterator over the QuoteData instances in the given JSON file, which contains either one JSON
+     * array or a sequence of JSON objects, such as NDJSON (one JSON object per line). The file is parsed
+     * incrementally (using a Jackson streaming parser), so its size does not matter. The iterator must be closed
+     * after use, which closes the file.
+     */
+    public MappingIterator<QuoteData> readQuoteData(Path jsonInputFile) throws IOException {
+        // For a root-level JSON array, the MappingIterator iterates over the array elements
+        return objectMapper.readerFor(QuoteData.class).readValues(Files.newInputStream(jsonInputFile));
+    }
+
+    public List<Quote> addQuoteBatch(List<QuoteData> quoteDataRecords) {
+        logger.debug(String.format("Trying to add a batch of %d quotes", quoteDataRecords.size()));
+
+        ResponseEntity<List<Quote>> responseEntity = restClient.post()
+                .uri("/quotes")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .body(quoteDataRecords)
+                .retrieve()
+                .toEntity(new ParameterizedTypeReference<>() {
+                });
+
+        logger.debug(String.format("Response status code: %s", responseEntity.getStatusCode()));
+
+        var quotes = Objects.requireNonNull(responseEntity.getBody());
+        Preconditions.checkArgument(quotes.size() == quoteDataRecords.size());
+        return quotes;
+    }
+
+    private static List<Quote> awaitBatch(Future<List<Quote>> batchResult) {
+        return Futures.getUnchecked(batchResult);
     }
 
     public Quote addQuote(QuoteData quoteData) {
-        logger.info(String.format("Trying to add a quote attributed to %s", quoteData.attributedTo()));
+        logger.debug(String.format("Trying to add a quote attributed to %s", quoteData.attributedTo()));
 
         ResponseEntity<Quote> responseEntity = restClient.post()
                 .uri("/quote")
@@ -78,15 +197,7 @@ public class QuoteAdder implements CommandLineRunner {
                 .retrieve()
                 .toEntity(Quote.class);
 
-        logger.info(String.format("Response status code: %s", responseEntity.getStatusCode()));
-        try {
-            logger.info(String.format(
-                    "Response payload:%n%s",
-                    objectMapper.writer().writeValueAsString(responseEntity.getBody()))
-            );
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        logger.debug(String.format("Response status code: %s", responseEntity.getStatusCode()));
 
         return responseEntity.getBody();
     }
@@ -95,13 +206,11 @@ public class QuoteAdder implements CommandLineRunner {
     public void run(String... args) throws IOException {
         Objects.checkIndex(0, args.length);
         var jsonInputFile = Path.of(args[0]);
-        var quoteDataAsJsonString = Files.readString(jsonInputFile);
-
-        List<QuoteData> quoteDataRecords =
-                Arrays.stream(objectMapper.readValue(quoteDataAsJsonString, QuoteData[].class)).toList();
 
-        var quotes = addQuotes(quoteDataRecords);
-        Preconditions.checkArgument(quotes.size() == quoteDataRecords.size());
+        try (var quoteDataRecords = readQuoteData(jsonInputFile)) {
+            addQuotes(quoteDataRecords, -1, quotes -> {
+            });
+        }
     }
 
     public static void main(String[] args) {
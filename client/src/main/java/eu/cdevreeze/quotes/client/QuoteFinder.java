@@ -16,25 +16,42 @@
 
 package eu.cdevreeze.quotes.client;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.google.common.collect.ImmutableList;
 import eu.cdevreeze.quotes.client.model.Quote;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.RestClient;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
 /**
  * Client program to find all quotes via the HTTP API.
  * <p>
+ * By default, all quotes are retrieved as one list, which is then written to standard output as one JSON array.
+ * In streaming mode (property "quotefinder.streaming"), the response is decoded one quote at a time, and each quote
+ * is written as soon as it has been decoded, as NDJSON (one JSON object per line). The output goes to the file path
+ * passed as program argument, if any, and to standard output otherwise. In streaming mode the memory used by the
+ * client does not depend on the number of quotes.
+ * <p>
  * Run with:
  * <pre>
  * cd client
@@ -52,14 +69,20 @@ import org.springframework.web.client.RestClient;
 @Import(ClientConfig.class)
 public class QuoteFinder implements CommandLineRunner {
 
-    private final Logger logger = LoggerFactory.getLogger(QuoteAdder.class);
+    private final Logger logger = LoggerFactory.getLogger(QuoteFinder.class);
 
     private final RestClient restClient;
     private final ObjectMapper objectMapper;
+    private final boolean streaming;
 
-    public QuoteFinder(RestClient restClient, ObjectMapper objectMapper) {
+    public QuoteFinder(
+            RestClient restClient,
+            ObjectMapper objectMapper,
+            @Value("${quotefinder.streaming:false}") boolean streaming
+    ) {
         this.restClient = restClient;
         this.objectMapper = objectMapper;
+        this.streaming = streaming;
     }
 
     public ImmutableList<Quote> findAllQuotes() {
@@ -77,11 +100,83 @@ public class QuoteFinder implements CommandLineRunner {
         return responseEntity.getBody();
     }
 
+    /**
+     * Retrieves all quotes, passing each quote to the given consumer as soon as it has been decoded from the
+     * response body, without holding the response (or a list of quotes) in memory. Returns the number of quotes.
+     * <p>
+     * The response is requested gzip-compressed, which the server can serve from its precompressed snapshot.
+     */
+    public long findAllQuotes(Consumer<? super Quote> quoteConsumer) {
+        logger.info("Trying to retrieve all quotes, streaming");
+
+        var progressLogger = new ProgressLogger(logger, "Retrieved", -1);
+
+        restClient.get()
+                .uri("/quotes.json")
+                .accept(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .exchange((request, response) -> {
+                    logger.info(String.format("Response status code: %s", response.getStatusCode()));
+                    if (!response.getStatusCode().is2xxSuccessful()) {
+                        throw new IllegalStateException(
+                                String.format("Retrieving all quotes failed with status code %s", response.getStatusCode()));
+                    }
+
+                    var gzipped = "gzip".equalsIgnoreCase(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+                    try (var responseBody = gzipped ? new GZIPInputStream(response.getBody()) : response.getBody();
+                         var quotes = objectMapper.readerFor(Quote.class).<Quote>readValues(responseBody)) {
+                        while (quotes.hasNextValue()) {
+                            quoteConsumer.accept(quotes.nextValue());
+                            progressLogger.quotesProcessed(1);
+                        }
+                    }
+                    return null;
+                }, true);
+
+        return progressLogger.done();
+    }
+
+    /**
+     * Retrieves all quotes, writing them to the given output stream as NDJSON (one compact JSON object per line)
+     * while they are being decoded. The output stream is flushed, but not closed. Returns the number of quotes.
+     */
+    public long writeAllQuotesAsNdjson(OutputStream outputStream) throws IOException {
+        ObjectWriter lineWriter = objectMapper.writer()
+                .without(SerializationFeature.INDENT_OUTPUT)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .withRootValueSeparator("\n");
+
+        var bufferedOutputStream = new BufferedOutputStream(outputStream);
+        long count;
+        try (var ndjsonWriter = lineWriter.writeValues(bufferedOutputStream)) {
+            count = findAllQuotes(quote -> {
+                try {
+                    ndjsonWriter.write(quote);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        if (count > 0) {
+            bufferedOutputStream.write("\n".getBytes(StandardCharsets.UTF_8));
+        }
+        bufferedOutputStream.flush();
+        return count;
+    }
+
     @Override
-    public void run(String... args) throws JsonProcessingException {
-        var quotes = findAllQuotes();
+    public void run(String... args) throws IOException {
+        if (!streaming) {
+            var quotes = findAllQuotes();
 
-        System.out.printf("%s%n", objectMapper.writer().writeValueAsString(quotes));
+            System.out.printf("%s%n", objectMapper.writer().writeValueAsString(quotes));
+        } else if (args.length == 0) {
+            writeAllQuotesAsNdjson(System.out);
+        } else {
+            try (var outputStream = Files.newOutputStream(Path.of(args[0]))) {
+                writeAllQuotesAsNdjson(outputStream);
+            }
+        }
     }
 
     public static void main(String[] args) {
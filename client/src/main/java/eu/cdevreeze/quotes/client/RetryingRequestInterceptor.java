@@ -0,0 +1,129 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Request interceptor retrying idempotent requests (GET, HEAD, OPTIONS, PUT and DELETE) a bounded number of times,
+ * if they fail with an I/O error (such as a refused connection or a timeout) or with status 502, 503 or 504.
+ * Other requests, such as POST requests adding quotes, are never retried, because a failed attempt may still
+ * have been processed by the server.
+ * <p>
+ * Between attempts the interceptor waits with exponential backoff and "full jitter" (a random duration up to the
+ * current backoff), so that many clients failing at the same time do not retry at the same time. A "Retry-After"
+ * response header (in seconds) overrides the backoff, but the wait never exceeds the maximum backoff.
+ *
+ * @author Chris de Vreeze
+ */
+final class RetryingRequestInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final ImmutableSet<HttpMethod> IDEMPOTENT_METHODS = ImmutableSet.of(
+            HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.PUT, HttpMethod.DELETE);
+
+    private static final ImmutableSet<Integer> RETRYABLE_STATUS_CODES = ImmutableSet.of(502, 503, 504);
+
+    private final Logger logger = LoggerFactory.getLogger(RetryingRequestInterceptor.class);
+
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    RetryingRequestInterceptor(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+        Preconditions.checkArgument(maxAttempts > 0);
+        Preconditions.checkArgument(initialBackoff.isPositive());
+        Preconditions.checkArgument(maxBackoff.compareTo(initialBackoff) >= 0);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(
+            HttpRequest request,
+            byte[] body,
+            ClientHttpRequestExecution execution
+    ) throws IOException {
+        if (maxAttempts == 1 || !IDEMPOTENT_METHODS.contains(request.getMethod())) {
+            return execution.execute(request, body);
+        }
+
+        var backoff = initialBackoff;
+        for (int attempt = 1; ; attempt++) {
+            Optional<Duration> retryAfter;
+            try {
+                var response = execution.execute(request, body);
+                if (attempt == maxAttempts || !RETRYABLE_STATUS_CODES.contains(response.getStatusCode().value())) {
+                    return response;
+                }
+                logger.debug(String.format(
+                        "Attempt %d of %s %s returned status code %s, retrying",
+                        attempt, request.getMethod(), request.getURI(), response.getStatusCode()));
+                retryAfter = parseRetryAfter(response.getHeaders());
+                response.close();
+            } catch (IOException e) {
+                if (attempt == maxAttempts || e instanceof InterruptedIOException && Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                logger.debug(String.format(
+                        "Attempt %d of %s %s failed (%s), retrying", attempt, request.getMethod(), request.getURI(), e));
+                retryAfter = Optional.empty();
+            }
+
+            var jitteredBackoffMillis = ThreadLocalRandom.current().nextLong(backoff.toMillis() + 1);
+            var waitMillis = Math.min(retryAfter.map(Duration::toMillis).orElse(jitteredBackoffMillis), maxBackoff.toMillis());
+            sleep(waitMillis);
+            backoff = backoff.multipliedBy(2).compareTo(maxBackoff) <= 0 ? backoff.multipliedBy(2) : maxBackoff;
+        }
+    }
+
+    private static Optional<Duration> parseRetryAfter(HttpHeaders headers) {
+        try {
+            return Optional.ofNullable(headers.getFirst(HttpHeaders.RETRY_AFTER))
+                    .map(String::trim)
+                    .map(Long::parseLong)
+                    .map(Duration::ofSeconds);
+        } catch (NumberFormatException e) {
+            // An HTTP date instead of a number of seconds; just use the backoff
+            return Optional.empty();
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2024-2024 Chris de Vreeze
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.cdevreeze.quotes.client;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test of RetryingRequestInterceptor, using a fake request execution instead of a running server.
+ *
+ * @author Chris de Vreeze
+ */
+class RetryingRequestInterceptorTest {
+
+    private static final byte[] NO_BODY = new byte[0];
+
+    private final RetryingRequestInterceptor interceptor =
+            new RetryingRequestInterceptor(3, Duration.ofMillis(1), Duration.ofMillis(5));
+
+    @Test
+    void shouldRetryIdempotentRequestUntilItSucceeds() throws IOException {
+        var attempts = new AtomicInteger();
+        ClientHttpRequestExecution execution = (request, body) ->
+                attempts.incrementAndGet() < 3 ? response(HttpStatus.SERVICE_UNAVAILABLE) : response(HttpStatus.OK);
+
+        var response = interceptor.intercept(request(HttpMethod.GET), NO_BODY, execution);
+
+        Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+        Assertions.assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void shouldReturnLastResponseAfterMaxAttempts() throws IOException {
+        var attempts = new AtomicInteger();
+        ClientHttpRequestExecution execution = (request, body) -> {
+            attempts.incrementAndGet();
+            return response(HttpStatus.BAD_GATEWAY);
+        };
+
+        var response = interceptor.intercept(request(HttpMethod.DELETE), NO_BODY, execution);
+
+        Assertions.assertEquals(HttpStatus.BAD_GATEWAY, response.getStatusCode());
+        Assertions.assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void shouldRetryIoErrorsAndRethrowTheLastOne() {
+        var attempts = new AtomicInteger();
+        ClientHttpRequestExecution execution = (request, body) -> {
+            throw new ConnectException("Attempt " + attempts.incrementAndGet());
+        };
+
+        var exception = Assertions.assertThrows(
+                ConnectException.class,
+                () -> interceptor.intercept(request(HttpMethod.GET), NO_BODY, execution));
+
+        Assertions.assertEquals("Attempt 3", exception.getMessage());
+        Assertions.assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void shouldNeverRetryNonIdempotentRequests() throws IOException {
+        var attempts = new AtomicInteger();
+        ClientHttpRequestExecution failingExecution = (request, body) -> {
+            attempts.incrementAndGet();
+            return response(HttpStatus.SERVICE_UNAVAILABLE);
+        };
+
+        var response = interceptor.intercept(request(HttpMethod.POST), NO_BODY, failingExecution);
+
+        Assertions.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        Assertions.assertEquals(1, attempts.get());
+
+        ClientHttpRequestExecution throwingExecution = (request, body) -> {
+            attempts.incrementAndGet();
+            throw new ConnectException("Connection refused");
+        };
+
+        Assertions.assertThrows(
+                ConnectException.class,
+                () -> interceptor.intercept(request(HttpMethod.POST), NO_BODY, throwingExecution));
+        Assertions.assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void shouldNotRetryOtherStatusCodes() throws IOException {
+        var attempts = new AtomicInteger();
+        ClientHttpRequestExecution execution = (request, body) -> {
+            attempts.incrementAndGet();
+            return response(HttpStatus.INTERNAL_SERVER_ERROR);
+        };
+
+        var response = interceptor.intercept(request(HttpMethod.GET), NO_BODY, execution);
+
+        Assertions.assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+        Assertions.assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void shouldCapRetryAfterAtMaxBackoff() throws IOException {
+        var cappingInterceptor = new RetryingRequestInterceptor(2, Duration.ofMillis(1), Duration.ofMillis(100));
+        var attempts = new AtomicInteger();
+        ClientHttpRequestExecution execution = (request, body) -> {
+            if (attempts.incrementAndGet() == 2) {
+                return response(HttpStatus.OK);
+            }
+            var response = response(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, "3600");
+            return response;
+        };
+
+        long startNanos = System.nanoTime();
+        var response = cappingInterceptor.intercept(request(HttpMethod.GET), NO_BODY, execution);
+        var elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+
+        Assertions.assertEquals(HttpStatus.OK, response.getStatusCode());
+        Assertions.assertEquals(2, attempts.get());
+        // The Retry-After header is honoured (rather than the 1 ms backoff), but only up to the maximum backoff
+        Assertions.assertTrue(elapsed.compareTo(Duration.ofMillis(100)) >= 0, "Elapsed: " + elapsed);
+        Assertions.assertTrue(elapsed.compareTo(Duration.ofSeconds(10)) < 0, "Elapsed: " + elapsed);
+    }
+
+    @Test
+    void shouldPassThroughIfOnlyOneAttemptIsAllowed() throws IOException {
+        var nonRetryingInterceptor = new RetryingRequestInterceptor(1, Duration.ofMillis(1), Duration.ofMillis(5));
+        var attempts = new AtomicInteger();
+        ClientHttpRequestExecution execution = (request, body) -> {
+            attempts.incrementAndGet();
+            return response(HttpStatus.SERVICE_UNAVAILABLE);
+        };
+
+        var response = nonRetryingInterceptor.intercept(request(HttpMethod.GET), NO_BODY, execution);
+
+        Assertions.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        Assertions.assertEquals(1, attempts.get());
+    }
+
+    private static MockClientHttpRequest request(HttpMethod method) {
+        return new MockClientHttpRequest(method, URI.create("http://localhost:8080/quotes"));
+    }
+
+    private static ClientHttpResponse response(HttpStatus status) {
+        return new MockClientHttpResponse(NO_BODY, status);
+    }
+}